@@ -0,0 +1,89 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+final class CacheFiles {
+
+  private final Path lockFile;
+  // file locks are held by the JVM, they do not protect threads of the same process
+  private final Lock lock = new ReentrantLock();
+
+  CacheFiles(Path lockFile) {
+    this.lockFile = lockFile;
+  }
+
+  <T> T locked(IoCallable<T> action) throws IOException {
+    Files.createDirectories(lockFile.getParent());
+    lock.lock();
+    try (FileChannel channel =
+            FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock ignored = channel.lock()) {
+      return action.call();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // null if the file does not exist or is corrupted
+  static <T> T read(Path file, Type type) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      return Utils.GSON.fromJson(Files.readString(file), type);
+    } catch (Exception e) {
+      // ignored, the file will be overwritten
+      return null;
+    }
+  }
+
+  static void write(Path file, String content) throws IOException {
+    Path tmp = tmp(file);
+    try {
+      Files.writeString(tmp, content);
+      move(tmp, file);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  static void copy(Path source, Path file) throws IOException {
+    Path tmp = tmp(file);
+    try {
+      Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+      move(tmp, file);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static Path tmp(Path file) throws IOException {
+    Files.createDirectories(file.getParent());
+    return Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+  }
+
+  // atomic move, so concurrent readers never see a partially written file
+  private static void move(Path tmp, Path file) throws IOException {
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @FunctionalInterface
+  interface IoCallable<T> {
+
+    T call() throws IOException;
+  }
+}
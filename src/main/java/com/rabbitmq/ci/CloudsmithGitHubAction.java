@@ -23,7 +23,8 @@ public class CloudsmithGitHubAction {
           "name",
           "type",
           "distribution",
-          "order_by");
+          "order_by",
+          "search_cache");
 
   static final List<String> PARAMS_FIELDS =
       List.of(
@@ -35,7 +36,20 @@ public class CloudsmithGitHubAction {
           "version",
           "version_filter",
           "keep_last_n",
-          "keep_last_minor_patches");
+          "keep_last_minor_patches",
+          "upload_concurrency",
+          "multipart_upload_threshold",
+          "multipart_chunk_size",
+          "hash_cache",
+          "sync_timeout",
+          "sync_polling_initial_interval",
+          "sync_polling_max_interval",
+          "sync_polling_strategy",
+          "download_concurrency",
+          "download_cache",
+          "download_cache_max_size",
+          "segmented_download_threshold",
+          "download_segments");
 
   static final Function<String, String> FIELD_TO_ENVIRONMENT_VARIABLE =
       f -> "INPUT_" + f.toUpperCase();
@@ -62,6 +76,8 @@ public class CloudsmithGitHubAction {
       logic.upload(System.getProperty("user.dir"));
     } else if ("delete".equals(action)) {
       logic.delete();
+    } else if ("verify".equals(action)) {
+      logic.verify(params.localPath());
     } else {
       throw new IllegalArgumentException("Action not supported: " + action);
     }
@@ -97,6 +113,8 @@ public class CloudsmithGitHubAction {
         field.set(obj, Boolean.parseBoolean(entry.getValue()));
       } else if (Integer.TYPE.equals(field.getType())) {
         field.set(obj, Integer.parseInt(entry.getValue()));
+      } else if (Long.TYPE.equals(field.getType())) {
+        field.set(obj, Long.parseLong(entry.getValue()));
       } else {
         field.set(obj, entry.getValue());
       }
@@ -12,23 +12,32 @@ import static java.util.stream.Collectors.toList;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 class CloudsmithLogic {
 
   static final String CONCOURSE_DELETED_VERSION = "<DELETED>";
   static final String CONCOURSE_JSON_DELETED_VERSION =
       "{\n" + "  \"version\": { \"version\": \"<DELETED>\" },\n" + "  \"metadata\": [ ]\n" + "}";
-  static final Duration PACKAGE_SYNCHRONIZATION_TIMEOUT = Duration.ofMinutes(5);
+  static final String SYNC_POLLING_STRATEGY_PACKAGE = "package";
+  static final String SYNC_POLLING_STRATEGY_SEARCH = "search";
+  static final String CONCOURSE_VERIFIED_VERSION = "<VERIFIED>";
+  static final String CONCOURSE_JSON_VERIFIED_VERSION =
+      "{\n" + "  \"version\": { \"version\": \"<VERIFIED>\" },\n" + "  \"metadata\": [ ]\n" + "}";
 
   private final Log log;
 
@@ -40,17 +49,19 @@ class CloudsmithLogic {
   }
 
   static Predicate<Package> globPredicate(String globs) {
+    Predicate<Path> fileNamePredicate = globFileNamePredicate(globs);
+    return p -> fileNamePredicate.test(Path.of(p.filename()).getFileName());
+  }
+
+  static Predicate<Path> globFileNamePredicate(String globs) {
     globs = globs == null || globs.isBlank() ? "*" : globs;
     return Arrays.stream(globs.split(","))
         .map(String::trim)
         .map(g -> "glob:" + g)
         .map(g -> FileSystems.getDefault().getPathMatcher(g))
-        .map(
-            pathMatcher ->
-                (Predicate<Package>) p -> pathMatcher.matches(Path.of(p.filename()).getFileName()))
+        .map(pathMatcher -> (Predicate<Path>) pathMatcher::matches)
         .reduce(
-            aPackage -> false,
-            (packagePredicate, packagePredicate2) -> packagePredicate.or(packagePredicate2));
+            aPath -> false, (pathPredicate, pathPredicate2) -> pathPredicate.or(pathPredicate2));
   }
 
   static List<String> filterForDeletion(
@@ -220,26 +231,86 @@ class CloudsmithLogic {
     return filename.substring(filename.lastIndexOf(".") + 1);
   }
 
+  static String syncPollingStrategy(Input.Params params) {
+    String strategy = params.syncPollingStrategy();
+    if (!SYNC_POLLING_STRATEGY_PACKAGE.equals(strategy)
+        && !SYNC_POLLING_STRATEGY_SEARCH.equals(strategy)) {
+      throw new IllegalArgumentException(
+          "sync_polling_strategy must be "
+              + SYNC_POLLING_STRATEGY_PACKAGE
+              + " or "
+              + SYNC_POLLING_STRATEGY_SEARCH
+              + ", not "
+              + strategy);
+    }
+    return strategy;
+  }
+
   static String base64(String in) {
     return Base64.getEncoder().encodeToString(in.getBytes(StandardCharsets.UTF_8));
   }
 
   void check() throws InterruptedException {
+    check(new CloudsmithPackageAccess(this.input, this.log));
+  }
+
+  void check(CloudsmithPackageAccess access) throws InterruptedException {
     String currentVersion = input.version() == null ? null : input.version().version();
+    String cursor = input.version() == null ? null : input.version().uploadedAt();
     input.version(null); // should not be a search criteria
-    CloudsmithPackageAccess access = new CloudsmithPackageAccess(this.input, this.log);
-    List<Package> packages = access.find();
-    List<String> versions = checkForNewVersions(currentVersion, packages);
-    String output =
-        Utils.GSON.toJson(
-            versions.stream().map(v -> Collections.singletonMap("version", v)).collect(toList()));
-    log.out(output);
+    List<Map<String, String>> versions;
+    if (input.source().incrementalCheck()) {
+      CloudsmithPackageAccess.Search search = new CloudsmithPackageAccess.Search();
+      if (cursor != null) {
+        try {
+          search.uploadedSince(ZonedDateTime.parse(cursor, DateTimeFormatter.ISO_ZONED_DATE_TIME));
+        } catch (DateTimeParseException e) {
+          log.logYellow("Warning: ignoring invalid uploaded_at cursor " + cursor);
+          cursor = null;
+        }
+      }
+      PackageIndex index = new PackageIndex(access.find(search));
+      String currentVersionCursor = cursor;
+      versions =
+          checkForNewVersions(currentVersion, index.packages()).stream()
+              .map(
+                  v -> {
+                    Map<String, String> version = new LinkedHashMap<>();
+                    version.put("version", v);
+                    if (v.equals(currentVersion) && currentVersionCursor != null) {
+                      // keeps the current version as it is, so that Concourse recognizes it
+                      version.put("uploaded_at", currentVersionCursor);
+                    } else if (index.latestUploadDate(v) != null) {
+                      version.put("uploaded_at", index.latestUploadDate(v).toInstant().toString());
+                    }
+                    return version;
+                  })
+              .collect(toList());
+    } else {
+      CloudsmithPackageAccess.Search search = new CloudsmithPackageAccess.Search();
+      if (currentVersion != null) {
+        // newest versions first, paging stops once past the current version
+        search
+            .sort(CloudsmithPackageAccess.Search.SORT_NEWEST_VERSION_FIRST)
+            .continueWhile(atOrAfterVersion(currentVersion));
+      }
+      // folded page by page, the listing is never in memory as a whole
+      versions =
+          checkForNewVersions(currentVersion, access.stream(search)).stream()
+              .map(v -> Collections.singletonMap("version", v))
+              .collect(toList());
+    }
+    log.out(Utils.GSON.toJson(versions));
   }
 
   void in(String directory) throws InterruptedException {
     if (input.version() != null && CONCOURSE_DELETED_VERSION.equals(input.version().version())) {
       log.log("Getting special version <DELETED> is a no-op; returning it as is");
       log.out(CONCOURSE_JSON_DELETED_VERSION);
+    } else if (input.version() != null
+        && CONCOURSE_VERIFIED_VERSION.equals(input.version().version())) {
+      log.log("Getting special version <VERIFIED> is a no-op; returning it as is");
+      log.out(CONCOURSE_JSON_VERIFIED_VERSION);
     } else {
       CloudsmithPackageAccess access = new CloudsmithPackageAccess(this.input, this.log);
       List<Package> packages = retry(access::find);
@@ -251,24 +322,36 @@ class CloudsmithLogic {
                   ? null
                   : input.params().globs());
 
-      if (packages.stream().anyMatch(globPredicate)) {
+      List<Package> toDownload = packages.stream().filter(globPredicate).collect(toList());
+      if (!toDownload.isEmpty()) {
         log.logGreen("Downloading files...");
       }
-      packages.stream()
-          .filter(globPredicate)
-          .forEach(
-              p -> {
-                try {
-                  byte[] content = access.download(p.cdnUrl());
-                  Files.write(Path.of(outputDirectory, p.filename()), content);
-                  String checksum = CloudsmithPackageAccess.sha256(content);
-                  String message =
-                      checksum.equals(p.sha256()) ? "OK" : "OK? (checksum verification failed)";
-                  log.logIndent(log.green(p.filename() + ": ") + message);
-                } catch (Exception e) {
-                  log.logIndent(log.red(p.filename() + ": " + e.getMessage()));
-                }
-              });
+      DownloadCache cache =
+          input.params() == null || input.params().downloadCache() == null
+              ? null
+              : new DownloadCache(
+                  Path.of(input.params().downloadCache()),
+                  input.params().downloadCacheMaxSize() * 1024 * 1024);
+      List<Package> schedule = downloadSchedule(toDownload);
+      List<Callable<DownloadResult>> downloads =
+          schedule.stream()
+              .map(
+                  p -> (Callable<DownloadResult>) () -> download(access, cache, outputDirectory, p))
+              .collect(toList());
+      int concurrency = input.params() == null ? 1 : input.params().downloadConcurrency();
+      long start = System.nanoTime();
+      List<DownloadResult> results = ConcurrencyUtils.invokeAll(downloads, concurrency);
+      Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+      Map<Package, DownloadResult> resultsByPackage = new IdentityHashMap<>();
+      for (int i = 0; i < schedule.size(); i++) {
+        resultsByPackage.put(schedule.get(i), results.get(i));
+      }
+      // results are reported in listing order, whatever the order of scheduling and completion
+      toDownload.forEach(p -> log.logIndent(resultsByPackage.get(p).message()));
+      if (!toDownload.isEmpty()) {
+        log.logIndent(downloadCounts(results));
+        log.logIndent(downloadSummary(results, elapsed));
+      }
 
       if (packages.stream().anyMatch(Predicate.not(globPredicate))) {
         log.newLine();
@@ -287,38 +370,240 @@ class CloudsmithLogic {
     }
   }
 
+  private DownloadResult download(
+      CloudsmithPackageAccess access, DownloadCache cache, String outputDirectory, Package p) {
+    try {
+      Path destination = destination(outputDirectory, p);
+      Files.createDirectories(destination.getParent());
+      if (isPresent(destination, p)) {
+        return new DownloadResult(
+            DownloadOutcome.PRESENT, log.green(p.filename() + ": ") + "OK (already present)");
+      }
+      if (cache != null
+          && p.sha256() != null
+          && cache.retrieve(p.sha256(), p.size(), destination)) {
+        return new DownloadResult(
+            DownloadOutcome.CACHED, log.green(p.filename() + ": ") + "OK (cache)");
+      }
+      long start = System.nanoTime();
+      String checksum = access.download(p.cdnUrl(), destination, p.size());
+      Duration duration = Duration.ofNanos(System.nanoTime() - start);
+      long bytes = Files.size(destination);
+      boolean verified = checksum.equals(p.sha256());
+      if (cache != null && verified) {
+        try {
+          cache.store(checksum, destination);
+        } catch (IOException e) {
+          log.logYellow("Could not add " + p.filename() + " to download cache: " + e.getMessage());
+        }
+      }
+      String message =
+          (verified ? "OK" : "OK? (checksum verification failed)")
+              + String.format(
+                  " (%s in %s, %s/s)",
+                  megabytes(bytes),
+                  seconds(duration),
+                  megabytes((long) (bytes / Math.max(duration.toNanos() / 1e9, 0.001))));
+      return new DownloadResult(
+          DownloadOutcome.FETCHED, log.green(p.filename() + ": ") + message, bytes, duration);
+    } catch (Exception e) {
+      return new DownloadResult(
+          DownloadOutcome.FAILED, log.red(p.filename() + ": " + e.getMessage()));
+    }
+  }
+
+  // largest files first, so that a large file does not end up downloading alone at the end
+  static List<Package> downloadSchedule(List<Package> packages) {
+    List<Package> schedule = new ArrayList<>(packages);
+    schedule.sort(Comparator.comparingLong(Package::size).reversed());
+    return schedule;
+  }
+
+  static String downloadSummary(List<DownloadResult> results, Duration elapsed) {
+    long bytes = results.stream().mapToLong(DownloadResult::bytes).sum();
+    Duration longest =
+        results.stream()
+            .map(DownloadResult::duration)
+            .max(Comparator.naturalOrder())
+            .orElse(Duration.ZERO);
+    Duration transfers =
+        results.stream().map(DownloadResult::duration).reduce(Duration.ZERO, Duration::plus);
+    return String.format(
+        "Fetched %s in %s: longest transfer %s (critical path), transfers total %s",
+        megabytes(bytes), seconds(elapsed), seconds(longest), seconds(transfers));
+  }
+
+  static String downloadCounts(List<DownloadResult> results) {
+    Map<DownloadOutcome, Long> counts = new EnumMap<>(DownloadOutcome.class);
+    results.forEach(r -> counts.merge(r.outcome(), 1L, Long::sum));
+    return String.format(
+        "%d file(s) already present, %d from cache, %d fetched, %d failed",
+        counts.getOrDefault(DownloadOutcome.PRESENT, 0L),
+        counts.getOrDefault(DownloadOutcome.CACHED, 0L),
+        counts.getOrDefault(DownloadOutcome.FETCHED, 0L),
+        counts.getOrDefault(DownloadOutcome.FAILED, 0L));
+  }
+
+  private static String megabytes(long bytes) {
+    return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+  }
+
+  private static String seconds(Duration duration) {
+    return String.format("%.1f s", duration.toMillis() / 1000.0);
+  }
+
+  enum DownloadOutcome {
+    PRESENT,
+    CACHED,
+    FETCHED,
+    FAILED
+  }
+
+  record DownloadResult(DownloadOutcome outcome, String message, long bytes, Duration duration) {
+
+    DownloadResult(DownloadOutcome outcome, String message) {
+      this(outcome, message, 0, Duration.ZERO);
+    }
+  }
+
+  // the size is checked first, so only files that are likely to match get hashed
+  static boolean isPresent(Path file, Package p) throws IOException, NoSuchAlgorithmException {
+    if (p.sha256() == null || !Files.isRegularFile(file)) {
+      return false;
+    }
+    if (p.size() > 0 && Files.size(file) != p.size()) {
+      return false;
+    }
+    return p.sha256().equals(CloudsmithPackageAccess.sha256(file));
+  }
+
+  // packages go to a sub-directory per repository/distribution when several are searched
+  private boolean isMultiTarget() {
+    return input.source().repositories().size() > 1 || input.source().distributions().size() > 1;
+  }
+
+  private Path destination(String outputDirectory, Package p) {
+    if (isMultiTarget()) {
+      return Path.of(outputDirectory, p.origin(), p.filename());
+    } else {
+      return Path.of(outputDirectory, p.filename());
+    }
+  }
+
   void out(String inputDirectory) throws InterruptedException, IOException {
     if (input.params().delete()) {
       delete();
+    } else if (input.params().verify()) {
+      verify(
+          input.params().localPath() == null
+              ? inputDirectory
+              : Path.of(inputDirectory, input.params().localPath()).toString());
     } else {
       upload(inputDirectory);
     }
   }
 
-  void delete() throws InterruptedException {
+  void verify(String directory) throws InterruptedException, IOException {
     CloudsmithPackageAccess access = new CloudsmithPackageAccess(this.input, this.log);
     List<Package> packages = retry(access::find);
+    Path root = Path.of(directory == null ? System.getProperty("user.dir") : directory);
+    String globs = input.params() == null ? null : input.params().globs();
+
+    Map<Path, Package> expected = new LinkedHashMap<>();
+    packages.stream()
+        .filter(globPredicate(globs))
+        .forEach(p -> expected.put(destination(root.toString(), p), p));
+    // only the directories downloads go to, see destination()
+    List<Path> directories =
+        isMultiTarget()
+            ? access.origins().stream().map(root::resolve).collect(toList())
+            : List.of(root);
+    List<Path> localFiles = localFiles(directories, globs);
+
+    log.logGreen("Verifying " + root + "...");
+    Verification verification =
+        verify(expected, localFiles, Runtime.getRuntime().availableProcessors());
+    verification
+        .mismatched()
+        .forEach(f -> log.logIndent(log.red(root.relativize(f) + ": mismatch")));
+    verification.missing().forEach(f -> log.logIndent(log.red(root.relativize(f) + ": missing")));
+    verification.extra().forEach(f -> log.logIndent(log.yellow(root.relativize(f) + ": extra")));
+    log.logIndent(
+        String.format(
+            "%d file(s) OK, %d mismatched, %d missing, %d extra",
+            verification.ok().size(),
+            verification.mismatched().size(),
+            verification.missing().size(),
+            verification.extra().size()));
+
+    if (verification.hasDiscrepancies()) {
+      log.logRed("Directory does not match the repository");
+      System.exit(1);
+    } else {
+      log.out(CONCOURSE_JSON_VERIFIED_VERSION);
+    }
+  }
+
+  // files directly in the directories, without partial downloads
+  static List<Path> localFiles(Collection<Path> directories, String globs) throws IOException {
+    Predicate<Path> fileNamePredicate = globFileNamePredicate(globs);
+    List<Path> localFiles = new ArrayList<>();
+    for (Path directory : directories) {
+      if (!Files.isDirectory(directory)) {
+        continue;
+      }
+      try (Stream<Path> files = Files.list(directory)) {
+        files
+            .filter(Files::isRegularFile)
+            .filter(f -> !f.getFileName().toString().endsWith(".part"))
+            .filter(f -> fileNamePredicate.test(f.getFileName()))
+            .forEach(localFiles::add);
+      }
+    }
+    Collections.sort(localFiles);
+    return localFiles;
+  }
+
+  static Verification verify(
+      Map<Path, Package> expected, Collection<Path> localFiles, int concurrency)
+      throws InterruptedException {
+    Set<Path> local = new HashSet<>(localFiles);
+    List<Path> present = new ArrayList<>();
+    List<Path> missing = new ArrayList<>();
+    expected.keySet().forEach(f -> (local.contains(f) ? present : missing).add(f));
+    List<Path> extra = localFiles.stream().filter(f -> !expected.containsKey(f)).collect(toList());
+
+    List<Callable<Boolean>> checks =
+        present.stream()
+            .map(f -> (Callable<Boolean>) () -> isPresent(f, expected.get(f)))
+            .collect(toList());
+    List<Boolean> matches = ConcurrencyUtils.invokeAll(checks, concurrency);
+    List<Path> ok = new ArrayList<>();
+    List<Path> mismatched = new ArrayList<>();
+    for (int i = 0; i < present.size(); i++) {
+      (matches.get(i) ? ok : mismatched).add(present.get(i));
+    }
+    return new Verification(ok, mismatched, missing, extra);
+  }
+
+  record Verification(List<Path> ok, List<Path> mismatched, List<Path> missing, List<Path> extra) {
 
-    Map<String, PackageVersion> versions =
-        packages.stream()
-            .reduce(
-                new HashMap<>(),
-                (packageVersions, aPackage) -> {
-                  PackageVersion packageVersion =
-                      packageVersions.computeIfAbsent(
-                          aPackage.version(),
-                          version -> {
-                            PackageVersion pv = new PackageVersion(version);
-                            pv.consider(aPackage);
-                            return pv;
-                          });
-                  packageVersion.consider(aPackage);
-                  return packageVersions;
-                },
-                (stringPackageVersionHashMap, stringPackageVersionHashMap2) -> {
-                  stringPackageVersionHashMap.putAll(stringPackageVersionHashMap2);
-                  return stringPackageVersionHashMap;
-                });
+    boolean hasDiscrepancies() {
+      return !(mismatched.isEmpty() && missing.isEmpty() && extra.isEmpty());
+    }
+  }
+
+  void delete() throws InterruptedException {
+    CloudsmithPackageAccess access = new CloudsmithPackageAccess(this.input, this.log);
+    PackageIndex index = new PackageIndex(retry(access::find));
+    List<Package> packages = index.packages();
+
+    Map<String, PackageVersion> versions = new LinkedHashMap<>();
+    for (String version : index.versions()) {
+      PackageVersion packageVersion = new PackageVersion(version);
+      index.byVersion(version).forEach(packageVersion::consider);
+      versions.put(version, packageVersion);
+    }
 
     List<String> versionsToDelete =
         filterForDeletion(
@@ -363,6 +648,7 @@ class CloudsmithLogic {
     }
 
     Collection<String> exceptionsToDeletion = new HashSet<>(deletionExceptions);
+    Collection<String> versionsToDeleteSet = new HashSet<>(versionsToDelete);
 
     log.newLine();
 
@@ -370,7 +656,7 @@ class CloudsmithLogic {
         versions.values().stream()
             .filter(
                 pv ->
-                    !versionsToDelete.contains(pv.version)
+                    !versionsToDeleteSet.contains(pv.version)
                         || exceptionsToDeletion.contains(pv.version))
             .map(pv -> formatVersion.apply(pv.version))
             .collect(toList());
@@ -388,7 +674,8 @@ class CloudsmithLogic {
     packages.forEach(
         p -> {
           boolean shouldBeDeleted =
-              versionsToDelete.contains(p.version()) && !exceptionsToDeletion.contains(p.version());
+              versionsToDeleteSet.contains(p.version())
+                  && !exceptionsToDeletion.contains(p.version());
           if (shouldBeDeleted) {
             deletedCount.incrementAndGet();
           }
@@ -416,7 +703,13 @@ class CloudsmithLogic {
     log.out(CONCOURSE_JSON_DELETED_VERSION);
   }
 
-  void upload(String inputDirectory) throws IOException {
+  void upload(String inputDirectory) throws IOException, InterruptedException {
+    if (input.source().repositories().size() > 1 || input.source().distributions().size() > 1) {
+      throw new IllegalArgumentException(
+          "Upload supports only one repository and one distribution");
+    }
+    PollingPolicy pollingPolicy = PollingPolicy.from(input.params());
+    String syncPollingStrategy = syncPollingStrategy(input.params());
     inputDirectory =
         (input.params().localPath() == null || input.params().localPath().isBlank())
             ? inputDirectory
@@ -452,81 +745,104 @@ class CloudsmithLogic {
     String packagesType = determinePackagesType(filenames);
 
     CloudsmithPackageAccess access = new CloudsmithPackageAccess(this.input, this.log);
-    List<String> uploadFilesUrls = new ArrayList<>(selectedFiles.size());
-    for (String selectedFile : selectedFiles) {
-      Path path = Paths.get(selectedFile);
-      log.log(log.green("Upload file: ") + path.getFileName());
-      try {
-        String selfUrl = retry(() -> access.upload(selectedFile, creationParameters, packagesType));
-        if (selfUrl == null) {
-          log.logIndent("Upload failed, duplicated raw package?");
-        } else {
-          log.logIndent(selfUrl);
-          uploadFilesUrls.add(selfUrl);
-        }
-      } catch (Exception e) {
-        log.logIndent(log.red("Error: " + e.getMessage()));
+    HashCache hashCache =
+        input.params().hashCache() == null
+            ? null
+            : new HashCache(Path.of(input.params().hashCache()));
+    List<String> filesToUpload = new ArrayList<>(selectedFiles);
+    List<Package> alreadyPublished = new ArrayList<>();
+    if (!input.params().republish()) {
+      alreadyPublished = alreadyPublished(access, hashCache, selectedFiles);
+      Set<String> publishedFilenames =
+          alreadyPublished.stream().map(Package::filename).collect(Collectors.toSet());
+      filesToUpload.removeIf(
+          f -> publishedFilenames.contains(Paths.get(f).getFileName().toString()));
+      if (!alreadyPublished.isEmpty()) {
+        log.logGreen("Already published, skipped:");
+        alreadyPublished.forEach(p -> log.logIndent(p.filename()));
+        log.newLine();
       }
     }
 
+    List<Package> createdPackages = new ArrayList<>(selectedFiles.size());
+    Map<String, String> uploadedFilenames = new LinkedHashMap<>();
+    // hashing overlaps with the transfers, concurrency applies to the network stages
+    UploadPipeline pipeline =
+        new UploadPipeline(
+            access,
+            hashCache,
+            creationParameters,
+            packagesType,
+            Runtime.getRuntime().availableProcessors(),
+            input.params().uploadConcurrency());
+    // output grouped per file, in selection order, whatever the order of completion
+    List<UploadPipeline.Upload> results = pipeline.run(filesToUpload);
+    for (UploadPipeline.Upload result : results) {
+      log.log(log.green("Upload file: ") + Paths.get(result.file()).getFileName());
+      if (result.error() != null) {
+        log.logIndent(log.red("Error: " + result.error().getMessage()));
+      } else if (result.created() == null) {
+        log.logIndent("Upload failed, duplicated raw package?");
+      } else {
+        String selfUrl = result.created().selfUrl();
+        log.logIndent(selfUrl);
+        createdPackages.add(result.created());
+        uploadedFilenames.put(selfUrl, Paths.get(result.file()).getFileName().toString());
+      }
+    }
+
+    List<UploadPipeline.Upload> failures =
+        results.stream().filter(r -> r.error() != null).collect(toList());
+    if (!failures.isEmpty()) {
+      log.newLine();
+      log.logRed("Failed upload(s):");
+      failures.forEach(
+          r ->
+              log.logIndent(
+                  log.red(Paths.get(r.file()).getFileName() + ": " + r.error().getMessage())));
+    }
+
     log.log("");
 
     String version = null;
 
-    if (!uploadFilesUrls.isEmpty()) {
+    if (!createdPackages.isEmpty()) {
       log.logGreen("Checking synchronization of packages...");
-      for (String packageUrl : uploadFilesUrls) {
-        Package p = null;
-        try {
-          p = retry(() -> access.findPackage(packageUrl));
-          long waitTime = Duration.ofSeconds(10).toMillis();
-          int waitedTime = 0;
-          long timeoutInMs = PACKAGE_SYNCHRONIZATION_TIMEOUT.toMillis();
-          log.printIndent(log.green(p.filename() + ": "));
-          boolean timedOut = true;
-          while (waitedTime <= timeoutInMs) {
-            if (p.isSyncCompleted()) {
-              log.log("OK");
-              if (version == null) {
-                version = p.version();
-              }
-              timedOut = false;
-              break;
-            }
-            if (p.isSyncFailed()) {
-              log.logRed("Error " + log.italic("(" + p.statusReason() + ")"));
-              if (version == null) {
-                version = p.version();
-              }
-              timedOut = false;
-              log.printIndent(log.indent("Deleting... "));
-              try {
-                access.delete(p);
-                log.logGreen("OK");
-              } catch (Exception e) {
-                log.logRed("Error: " + e.getMessage());
-              }
-              break;
-            }
-            log.print(".");
-            Thread.sleep(waitTime);
-            waitedTime += waitTime;
-            p = retry(() -> access.findPackage(packageUrl));
-          }
-          if (timedOut) {
-            log.print(
-                log.red(
-                    " timed out after "
-                        + PACKAGE_SYNCHRONIZATION_TIMEOUT.toSeconds()
-                        + " seconds"));
-          }
-        } catch (Exception e) {
-          log.logIndent(log.red(p == null ? "Error" : p.filename() + ": ") + e.getMessage());
-        }
+      long start = System.nanoTime();
+      long deadline = start + pollingPolicy.timeout().toNanos();
+      List<Duration> latencies = Collections.synchronizedList(new ArrayList<>());
+      if (SYNC_POLLING_STRATEGY_SEARCH.equals(syncPollingStrategy)) {
+        version =
+            waitForSynchronizationBySearch(
+                access, uploadedFilenames, pollingPolicy, start, deadline, latencies);
+      } else {
+        // packages are polled concurrently, under the same deadline, and reported as they
+        // complete
+        List<Callable<String>> synchronizations =
+            createdPackages.stream()
+                .map(
+                    p ->
+                        (Callable<String>)
+                            () ->
+                                waitForSynchronizationByStatus(
+                                    access, p, pollingPolicy, start, deadline, latencies))
+                .collect(toList());
+        version =
+            ConcurrencyUtils.invokeAll(synchronizations, synchronizations.size()).stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+      }
+      if (!latencies.isEmpty()) {
+        log.logIndent(synchronizationLatencies(latencies));
       }
     }
 
-    if (version == null && uploadFilesUrls.isEmpty() && extractedVersion != null) {
+    if (version == null && !alreadyPublished.isEmpty()) {
+      version = alreadyPublished.get(0).version();
+    }
+
+    if (version == null && createdPackages.isEmpty() && extractedVersion != null) {
       // it may be a whole set a re-submitted raw packages. If re-publish is disabled,
       // the uploads fails immediately, so there is no way to get the version from the
       // packages. We just set the version we extracted as the output version.
@@ -553,7 +869,222 @@ class CloudsmithLogic {
     }
   }
 
+  // returns the version of the package once synchronized (or failed), null on timeout
+  String waitForSynchronizationByStatus(
+      CloudsmithPackageAccess access,
+      Package created,
+      PollingPolicy pollingPolicy,
+      long start,
+      long deadline,
+      List<Duration> latencies) {
+    AtomicReference<Package> p = new AtomicReference<>(created);
+    try {
+      String statusUrl = created.statusUrl();
+      boolean over =
+          pollSynchronization(
+              pollingPolicy,
+              deadline,
+              attempt -> {
+                if (statusUrl == null) {
+                  p.set(retry(() -> access.findPackage(created.selfUrl())));
+                  return isSynchronizationOver(p.get().status());
+                }
+                if (isSynchronizationOver(retry(() -> access.findStatus(statusUrl)))) {
+                  // only the status was polled, the full package is needed (e.g. for the version)
+                  p.set(retry(() -> access.findPackage(created.selfUrl())));
+                  return true;
+                }
+                return false;
+              });
+      if (!over) {
+        logSynchronizationTimeout(created.filename(), pollingPolicy);
+        return null;
+      }
+      reportSynchronization(access, p.get(), start, latencies);
+      return p.get().version();
+    } catch (Exception e) {
+      log.logIndent(log.red(created.filename() + ": ") + e.getMessage());
+      return null;
+    }
+  }
+
+  // one search request per polling cycle, for the packages not synchronized (or failed) yet,
+  // returns the version of the first package (in upload order) that is over, null if none
+  String waitForSynchronizationBySearch(
+      CloudsmithPackageAccess access,
+      Map<String, String> filenamesBySelfUrl,
+      PollingPolicy pollingPolicy,
+      long start,
+      long deadline,
+      List<Duration> latencies) {
+    Map<String, String> pending = new LinkedHashMap<>(filenamesBySelfUrl);
+    Map<String, String> versions = new HashMap<>();
+    try {
+      boolean over =
+          pollSynchronization(
+              pollingPolicy,
+              deadline,
+              attempt -> {
+                Map<String, Package> packages = retry(() -> access.findBySelfUrls(pending));
+                for (Map.Entry<String, Package> entry : packages.entrySet()) {
+                  Package p = entry.getValue();
+                  if (isSynchronizationOver(p.status())) {
+                    reportSynchronization(access, p, start, latencies);
+                    versions.put(entry.getKey(), p.version());
+                    pending.remove(entry.getKey());
+                  }
+                }
+                return pending.isEmpty();
+              });
+      if (!over) {
+        pending.values().forEach(filename -> logSynchronizationTimeout(filename, pollingPolicy));
+      }
+    } catch (Exception e) {
+      log.logIndent(log.red("Error while checking synchronization: " + e.getMessage()));
+    }
+    return filenamesBySelfUrl.keySet().stream()
+        .map(versions::get)
+        .filter(Objects::nonNull)
+        .findFirst()
+        .orElse(null);
+  }
+
+  // probes until the synchronization is over, returns false if the deadline is reached before
+  private static boolean pollSynchronization(
+      PollingPolicy pollingPolicy, long deadline, SynchronizationProbe probe) throws Exception {
+    int attempt = 0;
+    while (!probe.isOver(attempt)) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      Thread.sleep(Math.min(pollingPolicy.delay(++attempt).toMillis(), remaining / 1_000_000 + 1));
+    }
+    return true;
+  }
+
+  private static boolean isSynchronizationOver(Package.Status status) {
+    return status.isSyncCompleted() || status.isSyncFailed();
+  }
+
+  private void logSynchronizationTimeout(String filename, PollingPolicy pollingPolicy) {
+    log.logIndent(
+        log.green(filename + ": ")
+            + log.red("timed out after " + pollingPolicy.timeout().toSeconds() + " seconds"));
+  }
+
+  private void reportSynchronization(
+      CloudsmithPackageAccess access, Package p, long start, List<Duration> latencies) {
+    // observed latency, including the polling granularity
+    Duration latency = Duration.ofNanos(System.nanoTime() - start);
+    latencies.add(latency);
+    Package.Status status = p.status();
+    if (status.isSyncCompleted()) {
+      log.logIndent(log.green(p.filename() + ": ") + "OK (" + seconds(latency) + ")");
+    } else {
+      String deletion;
+      try {
+        access.delete(p);
+        deletion = log.green("OK");
+      } catch (Exception e) {
+        deletion = log.red("Error: " + e.getMessage());
+      }
+      log.logIndent(
+          log.green(p.filename() + ": ")
+              + log.red("Error " + log.italic("(" + status.statusReason() + ")"))
+              + ", deleting... "
+              + deletion);
+    }
+  }
+
+  @FunctionalInterface
+  private interface SynchronizationProbe {
+
+    // the first attempt is 0
+    boolean isOver(int attempt) throws Exception;
+  }
+
+  static String synchronizationLatencies(List<Duration> latencies) {
+    List<Duration> sorted = new ArrayList<>(latencies);
+    Collections.sort(sorted);
+    return String.format(
+        "Synchronization latency: min %s, median %s, max %s",
+        seconds(sorted.get(0)),
+        seconds(sorted.get(sorted.size() / 2)),
+        seconds(sorted.get(sorted.size() - 1)));
+  }
+
+  private List<Package> alreadyPublished(
+      CloudsmithPackageAccess access, HashCache hashCache, Set<String> files)
+      throws InterruptedException {
+    List<Package> published;
+    try {
+      published = access.findByFilenames(filenames(files));
+    } catch (RuntimeException e) {
+      log.logYellow("Could not check already published packages: " + e.getMessage());
+      return Collections.emptyList();
+    }
+    return alreadyPublished(
+        published, files, hashCache, Runtime.getRuntime().availableProcessors());
+  }
+
+  static List<Package> alreadyPublished(
+      Collection<Package> published, Collection<String> files, HashCache hashCache, int concurrency)
+      throws InterruptedException {
+    // a package still synchronizing or that failed to (e.g. after a timeout) must be uploaded again
+    Map<String, List<Package>> candidatesByFilename = new HashMap<>();
+    published.stream()
+        .filter(p -> p.isSyncCompleted() && !p.isSyncFailed() && p.sha256() != null)
+        .forEach(
+            p -> candidatesByFilename.computeIfAbsent(p.filename(), f -> new ArrayList<>()).add(p));
+    List<Callable<Package>> checks =
+        files.stream()
+            .filter(f -> candidatesByFilename.containsKey(Paths.get(f).getFileName().toString()))
+            .map(
+                f ->
+                    (Callable<Package>)
+                        () -> {
+                          Path file = Paths.get(f);
+                          long size = Files.size(file);
+                          // a different size rules a package out without hashing
+                          List<Package> candidates =
+                              candidatesByFilename.get(file.getFileName().toString()).stream()
+                                  .filter(p -> p.size() == 0 || p.size() == size)
+                                  .collect(toList());
+                          if (candidates.isEmpty()) {
+                            return null;
+                          }
+                          String sha256 =
+                              hashCache == null
+                                  ? CloudsmithPackageAccess.sha256(file)
+                                  : hashCache.sha256(file);
+                          return candidates.stream()
+                              .filter(p -> p.sha256().equals(sha256))
+                              .findFirst()
+                              .orElse(null);
+                        })
+            .collect(toList());
+    return ConcurrencyUtils.invokeAll(checks, concurrency).stream()
+        .filter(Objects::nonNull)
+        .collect(toList());
+  }
+
+  static Predicate<Package> atOrAfterVersion(String version) {
+    ComparableVersion comparableVersion = comparableVersion(version);
+    return p ->
+        p.version() == null || comparableVersion(p.version()).compareTo(comparableVersion) >= 0;
+  }
+
+  private static ComparableVersion comparableVersion(String version) {
+    // e.g. 1:22.3.4.3-1, removing 1:
+    return new ComparableVersion(version.startsWith("1:") ? version.substring(2) : version);
+  }
+
   static List<String> checkForNewVersions(String currentVersion, List<Package> packages) {
+    return checkForNewVersions(currentVersion, packages.stream());
+  }
+
+  static List<String> checkForNewVersions(String currentVersion, Stream<Package> packages) {
     class VersionWrapper {
 
       final String original;
@@ -603,19 +1134,18 @@ class CloudsmithLogic {
             : v -> v.comparableVersion.compareTo(comparableCurrentVersion.comparableVersion) >= 0;
 
     HashMap<String, VersionWrapper> allVersions =
-        packages.stream()
-            .reduce(
-                new HashMap<>(),
-                (versions, p) -> {
-                  VersionWrapper versionWrapper =
-                      versions.computeIfAbsent(p.version(), VersionWrapper::new);
-                  versionWrapper.considerPackage(p);
-                  return versions;
-                },
-                (stringVersionWrapperMap, stringVersionWrapperMap2) -> {
-                  stringVersionWrapperMap.putAll(stringVersionWrapperMap2);
-                  return stringVersionWrapperMap;
-                });
+        packages.reduce(
+            new HashMap<>(),
+            (versions, p) -> {
+              VersionWrapper versionWrapper =
+                  versions.computeIfAbsent(p.version(), VersionWrapper::new);
+              versionWrapper.considerPackage(p);
+              return versions;
+            },
+            (stringVersionWrapperMap, stringVersionWrapperMap2) -> {
+              stringVersionWrapperMap.putAll(stringVersionWrapperMap2);
+              return stringVersionWrapperMap;
+            });
 
     if (currentVersion != null) {
       allVersions.put(currentVersion, new VersionWrapper(currentVersion));
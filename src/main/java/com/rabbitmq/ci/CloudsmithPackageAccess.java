@@ -11,22 +11,64 @@ import static com.rabbitmq.ci.Utils.encodePath;
 
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 final class CloudsmithPackageAccess {
 
+  static final String PAGINATION_PAGE_TOTAL_HEADER = "X-Pagination-PageTotal";
+  static final int MAX_CONCURRENT_PAGE_REQUESTS = 4;
+  static final int MAX_CONCURRENT_SEARCHES = 4;
+  static final int FILENAME_SEARCH_BATCH_SIZE = 25;
+  static final Duration DOWNLOAD_RETRY_INTERVAL = Duration.ofSeconds(2);
+  static final long HASH_CHUNK_SIZE = 64 * 1024 * 1024;
+  static final int MAX_CONCURRENT_PART_UPLOADS = 4;
+  static final Duration UPLOAD_RETRY_INTERVAL = Duration.ofSeconds(2);
+
+  private static final Type PACKAGE_LIST_TYPE = new TypeToken<List<Package>>() {}.getType();
+  private static final Executor PREFETCH_EXECUTOR =
+      Executors.newCachedThreadPool(
+          r -> {
+            // a prefetch left behind by a short-circuited stream must not keep the JVM alive
+            Thread thread = new Thread(r, "page-prefetch");
+            thread.setDaemon(true);
+            return thread;
+          });
+
   private final HttpClient client =
       HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(60)).build();
   private final Input input;
@@ -35,8 +77,10 @@ final class CloudsmithPackageAccess {
 
   private final String baseUploadUrlTpl;
   private final String baseCreatePackageUrlTpl;
+  private final String baseFilesUrlTpl;
   private final String baseSearchUrlTpl;
   private final Log log;
+  private final SearchCache searchCache;
 
   CloudsmithPackageAccess(
       Input input, String baseUpload, String baseCreate, String baseSearch, Log log) {
@@ -45,8 +89,11 @@ final class CloudsmithPackageAccess {
     this.params = input.params();
     this.baseUploadUrlTpl = baseUpload + "/{org}/{repo}/{file}";
     this.baseCreatePackageUrlTpl = baseCreate + "/v1/packages/{org}/{repo}/upload/{type}/";
+    this.baseFilesUrlTpl = baseCreate + "/v1/files/{org}/{repo}/";
     this.baseSearchUrlTpl = baseSearch + "/packages/{org}/{repo}/";
     this.log = log;
+    this.searchCache =
+        source.searchCache() == null ? null : new SearchCache(Paths.get(source.searchCache()));
   }
 
   CloudsmithPackageAccess(Input input, Log log) {
@@ -60,7 +107,23 @@ final class CloudsmithPackageAccess {
 
   static String sha256(byte[] content) throws NoSuchAlgorithmException {
     MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-    byte[] digest = messageDigest.digest(content);
+    return hex(messageDigest.digest(content));
+  }
+
+  // memory-mapped reads, by chunks to keep the mappings reasonably small
+  static String sha256(Path file) throws IOException, NoSuchAlgorithmException {
+    MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += HASH_CHUNK_SIZE) {
+        long length = Math.min(HASH_CHUNK_SIZE, size - position);
+        messageDigest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+      }
+    }
+    return hex(messageDigest.digest());
+  }
+
+  static String hex(byte[] digest) {
     StringBuilder sb = new StringBuilder();
     for (int i = 0; i < digest.length; ++i) {
       sb.append(Integer.toHexString((digest[i] & 0xFF) | 0x100), 1, 3);
@@ -87,43 +150,220 @@ final class CloudsmithPackageAccess {
     return Utils.GSON.toJson(parameters);
   }
 
-  List<Package> find() throws InterruptedException {
-    List<String> queryParameters = new ArrayList<>();
-    Input.Source source = input.source();
-    Input.Version version = input.version();
+  static String pageUrl(String url, int page) {
+    return url + (url.contains("?") ? "&" : "?") + "page=" + page;
+  }
 
-    if (input.source().name() != null) {
-      queryParameters.add("filename:" + input.source().name());
+  static String uploadDateCriteria(ZonedDateTime uploadedSince) {
+    // day granularity, the caller filters out what is older than the exact date if needed
+    return DateTimeFormatter.ISO_LOCAL_DATE.format(
+        uploadedSince.withZoneSameInstant(ZoneOffset.UTC));
+  }
+
+  static int pageTotal(HttpResponse<?> response) {
+    return response
+        .headers()
+        .firstValue(PAGINATION_PAGE_TOTAL_HEADER)
+        .map(String::trim)
+        .map(Integer::parseInt)
+        .orElse(-1);
+  }
+
+  List<Package> findByFilenames(Collection<String> filenames) throws InterruptedException {
+    return findByFilenames(filenames, true);
+  }
+
+  private List<Package> findByFilenames(Collection<String> filenames, boolean logQuery)
+      throws InterruptedException {
+    List<String> names = new ArrayList<>(filenames);
+    List<Callable<List<Package>>> tasks = new ArrayList<>();
+    for (int i = 0; i < names.size(); i += FILENAME_SEARCH_BATCH_SIZE) {
+      List<String> batch = names.subList(i, Math.min(names.size(), i + FILENAME_SEARCH_BATCH_SIZE));
+      tasks.add(() -> find(new Search().filenames(batch).logQuery(logQuery)));
     }
+    List<Package> packages = new ArrayList<>();
+    ConcurrencyUtils.invokeAll(tasks, MAX_CONCURRENT_SEARCHES).forEach(packages::addAll);
+    return packages;
+  }
 
-    if (input.params() != null && input.params().versionFilter() != null) {
-      queryParameters.add("version:" + input.params().versionFilter());
+  // keyed by the given self URLs, packages not found (e.g. not indexed yet) are not in the map
+  Map<String, Package> findBySelfUrls(Map<String, String> filenamesBySelfUrl)
+      throws InterruptedException {
+    // hosts and paths of self URLs differ between API endpoints, the identifier does not
+    Map<String, String> selfUrlsByIdentifier = new HashMap<>();
+    filenamesBySelfUrl.keySet().forEach(u -> selfUrlsByIdentifier.put(packageIdentifier(u), u));
+    Map<String, Package> packages = new LinkedHashMap<>();
+    for (Package p : findByFilenames(new LinkedHashSet<>(filenamesBySelfUrl.values()), false)) {
+      String selfUrl =
+          p.selfUrl() == null ? null : selfUrlsByIdentifier.get(packageIdentifier(p.selfUrl()));
+      if (selfUrl != null) {
+        packages.put(selfUrl, p);
+      }
     }
+    return packages;
+  }
 
-    String versionCriteria = null;
-    if (version != null && version.version() != null) {
-      versionCriteria = version.version();
+  // last segment of the self URL, the permanent slug of the package
+  static String packageIdentifier(String selfUrl) {
+    String path = URI.create(selfUrl).getPath();
+    if (path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  static String escapeRegex(String value) {
+    StringBuilder escaped = new StringBuilder();
+    for (char c : value.toCharArray()) {
+      if ("\\.^$|?*+()[]{}".indexOf(c) >= 0) {
+        escaped.append('\\');
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
+  }
+
+  List<Package> find() throws InterruptedException {
+    return find(new Search());
+  }
+
+  List<Package> find(Search search) throws InterruptedException {
+    if (search.continueWhile() != null) {
+      // pages are fetched one after the other, so that the listing can stop as early as possible
+      return stream(search).collect(Collectors.toList());
+    }
+    List<Target> targets = targets();
+    if (targets.size() == 1) {
+      return find(search, targets.get(0));
+    }
+    List<Callable<List<Package>>> tasks = new ArrayList<>(targets.size());
+    for (Target target : targets) {
+      tasks.add(() -> find(search, target));
+    }
+    // the same package can be found in several targets
+    Map<String, Package> packages = new LinkedHashMap<>();
+    ConcurrencyUtils.invokeAll(tasks, MAX_CONCURRENT_SEARCHES)
+        .forEach(ps -> ps.forEach(p -> packages.putIfAbsent(packageKey(p), p)));
+    return new ArrayList<>(packages.values());
+  }
+
+  private List<Package> find(Search search, Target target) throws InterruptedException {
+    String url = searchUrl(search, target);
+    Page firstPage = retry(() -> page(url));
+    List<Package> packages = new ArrayList<>(firstPage.packages());
+    if (firstPage.pageTotal() >= 0) {
+      // the total number of pages is known, the remaining pages can be fetched concurrently
+      List<Callable<List<Package>>> tasks = new ArrayList<>();
+      for (int i = 2; i <= firstPage.pageTotal(); i++) {
+        String pageUrl = pageUrl(url, i);
+        tasks.add(() -> retry(() -> page(pageUrl)).packages());
+      }
+      ConcurrencyUtils.invokeAll(tasks, MAX_CONCURRENT_PAGE_REQUESTS).forEach(packages::addAll);
     } else {
-      if (input.params() != null) {
-        versionCriteria = input.params().version();
+      Page page = firstPage;
+      while (page.nextLink() != null) {
+        String nextLink = page.nextLink();
+        page = retry(() -> page(nextLink));
+        packages.addAll(page.packages());
       }
     }
-    if (versionCriteria != null) {
-      queryParameters.add("version:" + versionCriteria);
+    packages.forEach(p -> p.origin(target.origin()));
+    return packages;
+  }
+
+  // pages are requested lazily, the next one while the caller works on the current one, and no
+  // more pages are requested once the stream is short-circuited
+  Stream<Package> stream() {
+    return stream(new Search());
+  }
+
+  Stream<Package> stream(Search search) {
+    List<Target> targets = targets();
+    Stream<Package> packages = targets.stream().flatMap(target -> stream(search, target));
+    if (targets.size() == 1) {
+      return packages;
+    }
+    // the same package can be found in several targets
+    Set<String> keys = new HashSet<>();
+    return packages.filter(p -> keys.add(packageKey(p)));
+  }
+
+  private Stream<Package> stream(Search search, Target target) {
+    PageIterator pages = new PageIterator(searchUrl(search, target), target);
+    Stream<Package> packages =
+        StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                    pages, Spliterator.ORDERED | Spliterator.NONNULL),
+                false)
+            .flatMap(page -> page.packages().stream());
+    // each target has its own order, so the condition applies per target
+    return search.continueWhile() == null ? packages : packages.takeWhile(search.continueWhile());
+  }
+
+  List<String> origins() {
+    return targets().stream().map(Target::origin).collect(Collectors.toList());
+  }
+
+  private List<Target> targets() {
+    Input.Version version = input.version();
+    List<String> distributions =
+        version != null && version.distribution() != null
+            ? List.of(version.distribution())
+            : source.distributions();
+    List<Target> targets = new ArrayList<>();
+    for (String repository : source.repositories()) {
+      if (distributions.isEmpty()) {
+        targets.add(new Target(repository, null));
+      } else {
+        distributions.forEach(distribution -> targets.add(new Target(repository, distribution)));
+      }
     }
+    return targets;
+  }
+
+  private static String packageKey(Package p) {
+    return p.selfUrl() == null ? p.origin() + "/" + p.filename() : p.selfUrl();
+  }
+
+  private String searchUrl(Search search, Target target) {
+    List<String> queryParameters = new ArrayList<>();
+    Input.Source source = input.source();
+    Input.Version version = input.version();
 
-    String distribution;
-    if (version != null && version.distribution() != null) {
-      distribution = version.distribution();
+    if (search.filenames() != null) {
+      queryParameters.add(
+          search.filenames().stream()
+              .map(f -> "filename:^" + escapeRegex(f) + "$")
+              .collect(Collectors.joining(" OR ", "(", ")")));
     } else {
-      distribution = input.source().distribution();
+      if (input.source().name() != null) {
+        queryParameters.add("filename:" + input.source().name());
+      }
+
+      if (input.params() != null && input.params().versionFilter() != null) {
+        queryParameters.add("version:" + input.params().versionFilter());
+      }
+
+      String versionCriteria = null;
+      if (version != null && version.version() != null) {
+        versionCriteria = version.version();
+      } else {
+        if (input.params() != null) {
+          versionCriteria = input.params().version();
+        }
+      }
+      if (versionCriteria != null) {
+        queryParameters.add("version:" + versionCriteria);
+      }
     }
+
+    String distribution = target.distribution();
     if (distribution != null) {
       String[] nameCodename = distribution.split("/");
       if (nameCodename.length != 2) {
         log.logRed(
             "Distribution invalid: "
-                + source.distribution()
+                + distribution
                 + ". "
                 + "Format should be {distribution}/{codename}, e.g. ubuntu/focal.");
       }
@@ -137,68 +377,251 @@ final class CloudsmithPackageAccess {
     } else {
       typeCriteria = source.type();
     }
-    if (typeCriteria != null && !"raw".equals(typeCriteria)) {
+    if (search.filenames() == null && typeCriteria != null && !"raw".equals(typeCriteria)) {
       queryParameters.add("filename:" + typeCriteria + "$");
     }
 
+    if (search.uploadedSince() != null) {
+      queryParameters.add("uploaded:>=" + uploadDateCriteria(search.uploadedSince()));
+    }
+
     String url =
         this.baseSearchUrlTpl
             .replace("{org}", encodePath(source.organization()))
-            .replace("{repo}", encodePath(source.repository()));
+            .replace("{repo}", encodePath(target.repository()));
 
     if (!queryParameters.isEmpty()) {
       String query = String.join(" AND ", queryParameters);
-      log.newLine();
-      log.log(log.yellow("Query: ") + query);
-      log.newLine();
+      if (search.logQuery()) {
+        log.newLine();
+        log.log(log.yellow("Query: ") + query);
+        log.newLine();
+      }
       query = encodeHttpParameter(query);
       url = url + "?query=" + query;
     }
 
-    HttpRequest request = requestBuilder().uri(URI.create(url)).GET().build();
+    if (search.sort() != null) {
+      url = url + (url.contains("?") ? "&" : "?") + "sort=" + encodeHttpParameter(search.sort());
+    }
 
-    Type type = new TypeToken<List<Package>>() {}.getType();
+    return url;
+  }
 
-    List<Package> packages = new ArrayList<>();
-    boolean hasMore = true;
-    while (hasMore) {
-      HttpRequest rq = request;
-      HttpResponse<String> response =
-          retry(() -> client.send(rq, HttpResponse.BodyHandlers.ofString()));
-      packages.addAll(Utils.GSON.fromJson(response.body(), type));
-      Optional<String> link = response.headers().firstValue("link");
-      String nextLink;
-      if (link.isPresent() && (nextLink = nextLink(link.get())) != null) {
-        request = requestBuilder().uri(URI.create(nextLink)).GET().build();
-      } else {
-        hasMore = false;
+  private Page page(String url) throws IOException, InterruptedException {
+    HttpRequest.Builder requestBuilder = requestBuilder().uri(URI.create(url)).GET();
+    SearchCache.Entry cached = searchCache == null ? null : searchCache.get(url);
+    if (cached != null) {
+      if (cached.etag() != null) {
+        requestBuilder.setHeader("If-None-Match", cached.etag());
+      }
+      if (cached.lastModified() != null) {
+        requestBuilder.setHeader("If-Modified-Since", cached.lastModified());
       }
     }
-    return packages;
+    HttpResponse<String> response =
+        client.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofString());
+    String body;
+    String link;
+    int pageTotal;
+    if (cached != null && response.statusCode() == 304) {
+      body = cached.body();
+      link = cached.link();
+      pageTotal = cached.pageTotal();
+    } else {
+      body = response.body();
+      link = response.headers().firstValue("link").orElse(null);
+      pageTotal = pageTotal(response);
+      Optional<String> etag = response.headers().firstValue("ETag");
+      Optional<String> lastModified = response.headers().firstValue("Last-Modified");
+      if (searchCache != null
+          && response.statusCode() == 200
+          && (etag.isPresent() || lastModified.isPresent())) {
+        try {
+          searchCache.put(
+              new SearchCache.Entry(
+                  url, etag.orElse(null), lastModified.orElse(null), link, pageTotal, body));
+        } catch (IOException e) {
+          log.logYellow("Warning: could not cache search page: " + e.getMessage());
+        }
+      }
+    }
+    List<Package> packages = Utils.GSON.fromJson(body, PACKAGE_LIST_TYPE);
+    return new Page(packages, link == null ? null : nextLink(link), pageTotal);
   }
 
-  String upload(String file, Map<String, Object> creationParameters, String type)
-      throws IOException, NoSuchAlgorithmException, InterruptedException {
-    creationParameters = new LinkedHashMap<>(creationParameters);
-    Path path = Paths.get(file);
-    byte[] content = Files.readAllBytes(path);
+  // returns the identifier to use for the package creation
+  String uploadFile(Path path, String sha256) throws IOException, InterruptedException {
+    if (params != null && Files.size(path) > params.multipartUploadThreshold() * 1024 * 1024) {
+      return uploadFileInParts(path, sha256);
+    }
     String uploadUrl =
         this.baseUploadUrlTpl
             .replace("{org}", encodePath(input.source().organization()))
             .replace("{repo}", encodePath(input.source().repository()))
             .replace("{file}", encodePath(path.getFileName().toString()));
 
+    // the file is streamed, not loaded in memory, and an error response (e.g. authentication)
+    // comes before the content is sent, thanks to "Expect: 100-continue"
     HttpRequest request =
         requestBuilder()
-            .setHeader("Content-Sha256", sha256(content))
+            .setHeader("Content-Sha256", sha256)
             .uri(URI.create(uploadUrl))
-            .PUT(HttpRequest.BodyPublishers.ofByteArray(content))
+            .expectContinue(true)
+            .PUT(HttpRequest.BodyPublishers.ofFile(path))
+            .build();
+    HttpResponse<String> response =
+        retryOnServerError(
+            () -> {
+              HttpResponse<String> r = client.send(request, HttpResponse.BodyHandlers.ofString());
+              if (r.statusCode() / 100 != 2) {
+                throw new HttpStatusException(r.statusCode());
+              }
+              return r;
+            },
+            UPLOAD_RETRY_INTERVAL);
+    return Utils.GSON.fromJson(response.body(), JsonObject.class).get("identifier").getAsString();
+  }
+
+  String uploadFileInParts(Path path, String sha256) throws IOException, InterruptedException {
+    String filesUrl =
+        this.baseFilesUrlTpl
+            .replace("{org}", encodePath(input.source().organization()))
+            .replace("{repo}", encodePath(input.source().repository()));
+    Map<String, Object> requestParameters = new LinkedHashMap<>();
+    requestParameters.put("filename", path.getFileName().toString());
+    requestParameters.put("method", "put_parts");
+    requestParameters.put("sha256_checksum", sha256);
+    JsonObject uploadRequest =
+        retryOnServerError(
+            () -> postJson(filesUrl, uploadJsonBody(requestParameters)), UPLOAD_RETRY_INTERVAL);
+    String identifier = uploadRequest.get("identifier").getAsString();
+    String uploadUrl = uploadRequest.get("upload_url").getAsString();
+
+    long size = Files.size(path);
+    long partSize = params.multipartChunkSize() * 1024 * 1024;
+    List<Callable<Void>> parts = new ArrayList<>();
+    int partNumber = 1;
+    for (long offset = 0; offset < size; offset += partSize) {
+      String partUrl =
+          uploadUrl
+              + (uploadUrl.contains("?") ? "&" : "?")
+              + "upload_id="
+              + encodeHttpParameter(identifier)
+              + "&part_number="
+              + partNumber++;
+      long partOffset = offset;
+      long partLength = Math.min(partSize, size - offset);
+      // only the part is sent again on failure, within the same upload session
+      parts.add(
+          () ->
+              retryOnServerError(
+                  () -> uploadPart(partUrl, path, partOffset, partLength), UPLOAD_RETRY_INTERVAL));
+    }
+    try {
+      ConcurrencyUtils.invokeAll(parts, MAX_CONCURRENT_PART_UPLOADS);
+
+      Map<String, Object> completeParameters = new LinkedHashMap<>();
+      completeParameters.put("upload_id", identifier);
+      completeParameters.put("complete", true);
+      JsonObject completion =
+          retryOnServerError(
+              () ->
+                  postJson(
+                      filesUrl + encodePath(identifier) + "/complete/",
+                      uploadJsonBody(completeParameters)),
+              UPLOAD_RETRY_INTERVAL);
+      return completion.get("identifier").getAsString();
+    } catch (IOException | RuntimeException e) {
+      abortUpload(filesUrl, identifier);
+      throw e;
+    }
+  }
+
+  private void abortUpload(String filesUrl, String identifier) throws InterruptedException {
+    try {
+      postJson(filesUrl + encodePath(identifier) + "/abort/", "{}");
+    } catch (IOException e) {
+      log.logYellow("Could not abort upload " + identifier + ": " + e.getMessage());
+    }
+  }
+
+  private Void uploadPart(String partUrl, Path path, long offset, long length)
+      throws IOException, InterruptedException {
+    // one channel for the whole part, the request is sent before it is closed
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      HttpRequest request =
+          requestBuilder()
+              .uri(URI.create(partUrl))
+              .PUT(
+                  HttpRequest.BodyPublishers.fromPublisher(
+                      HttpRequest.BodyPublishers.ofByteArrays(
+                          () -> fileSlice(channel, path, offset, length)),
+                      length))
+              .build();
+      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() / 100 != 2) {
+        throw new HttpStatusException(response.statusCode());
+      }
+    }
+    return null;
+  }
+
+  private JsonObject postJson(String url, String json) throws IOException, InterruptedException {
+    HttpRequest request =
+        requestBuilder()
+            .setHeader("Content-Type", "application/json")
+            .uri(URI.create(url))
+            .POST(HttpRequest.BodyPublishers.ofString(json))
             .build();
     HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-    String responseBody = response.body();
+    if (response.statusCode() / 100 != 2) {
+      throw new HttpStatusException(
+          response.statusCode(),
+          "HTTP response code is " + response.statusCode() + ", body " + response.body());
+    }
+    return Utils.GSON.fromJson(response.body(), JsonObject.class);
+  }
 
-    String identifier =
-        Utils.GSON.fromJson(responseBody, JsonObject.class).get("identifier").getAsString();
+  // reads the slice as it is sent, so a part is never fully in memory
+  private static Iterator<byte[]> fileSlice(
+      FileChannel channel, Path path, long offset, long length) {
+    return new Iterator<>() {
+
+      private long position = offset;
+      private final long end = offset + length;
+
+      @Override
+      public boolean hasNext() {
+        return position < end;
+      }
+
+      @Override
+      public byte[] next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(1024 * 1024, end - position));
+        try {
+          while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+              throw new EOFException("Unexpected end of file " + path);
+            }
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        position += buffer.capacity();
+        return buffer.array();
+      }
+    };
+  }
+
+  // returns the created package, with its self and status URLs, null for a duplicated raw package
+  Package create(String identifier, Map<String, Object> creationParameters, String type)
+      throws IOException, InterruptedException {
+    creationParameters = new LinkedHashMap<>(creationParameters);
     String createUrl =
         this.baseCreatePackageUrlTpl
             .replace("{org}", encodePath(input.source().organization()))
@@ -220,34 +643,41 @@ final class CloudsmithPackageAccess {
 
     String createJson = uploadJsonBody(creationParameters);
 
-    request =
+    HttpRequest request =
         requestBuilder()
             .setHeader("Content-Type", "application/json")
             .uri(URI.create(createUrl))
             .POST(HttpRequest.BodyPublishers.ofString(createJson))
             .build();
 
-    response = client.send(request, HttpResponse.BodyHandlers.ofString());
-    responseBody = response.body();
+    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    String responseBody = response.body();
 
-    String selfUrl;
+    Package created;
     if (response.statusCode() == 400
         && "raw".equals(type)
         && !responseBody.contains("\"self_url\"")
         && !params.republish()) {
       // duplicated package, it's detected immediately (no sync process)
-      selfUrl = null;
+      created = null;
     } else {
       try {
-        selfUrl = Utils.GSON.fromJson(responseBody, JsonObject.class).get("self_url").getAsString();
+        created = Utils.GSON.fromJson(responseBody, Package.class);
+        if (created == null || created.selfUrl() == null) {
+          throw new IllegalStateException("No self_url in response");
+        }
       } catch (RuntimeException e) {
         log.logIndent(
             log.red("Error: response status " + response.statusCode() + ", body " + responseBody));
         log.logIndent(log.red("Creation parameters: " + createJson));
+        if (response.statusCode() / 100 != 2) {
+          // the status tells more than the parsing error, and whether to retry
+          throw new HttpStatusException(response.statusCode());
+        }
         throw e;
       }
     }
-    return selfUrl;
+    return created;
   }
 
   void delete(Package p) throws IOException, InterruptedException {
@@ -262,10 +692,152 @@ final class CloudsmithPackageAccess {
     }
   }
 
-  byte[] download(String packageUrl) throws IOException, InterruptedException {
-    HttpRequest request = requestBuilder().uri(URI.create(packageUrl)).GET().build();
-    HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
-    return response.body();
+  // returns the SHA-256 checksum of the downloaded file
+  String download(String packageUrl, Path destination, long size)
+      throws IOException, InterruptedException, NoSuchAlgorithmException {
+    Path part = destination.resolveSibling(destination.getFileName() + ".part");
+    int segments = params == null ? 1 : params.downloadSegments();
+    long threshold = params == null ? Long.MAX_VALUE : params.segmentedDownloadThreshold();
+    if (segments > 1 && size > threshold * 1024 * 1024) {
+      try {
+        downloadSegments(packageUrl, part, size, segments);
+        Files.move(part, destination, StandardCopyOption.REPLACE_EXISTING);
+        return sha256(destination);
+      } catch (RangeNotSupportedException e) {
+        log.logYellow("Range requests not supported for " + packageUrl + ", using single stream");
+        Files.deleteIfExists(part);
+      }
+    }
+    // only bytes received during this call can be resumed
+    Files.deleteIfExists(part);
+    AtomicReference<String> etag = new AtomicReference<>();
+    String checksum =
+        retryOnServerError(() -> downloadAttempt(packageUrl, part, etag), DOWNLOAD_RETRY_INTERVAL);
+    Files.move(part, destination, StandardCopyOption.REPLACE_EXISTING);
+    return checksum;
+  }
+
+  private String downloadAttempt(String packageUrl, Path part, AtomicReference<String> etag)
+      throws IOException, InterruptedException, NoSuchAlgorithmException {
+    long offset = Files.isRegularFile(part) ? Files.size(part) : 0;
+    HttpRequest.Builder requestBuilder = requestBuilder().uri(URI.create(packageUrl)).GET();
+    if (offset > 0) {
+      requestBuilder.setHeader("Range", "bytes=" + offset + "-");
+      if (etag.get() != null) {
+        // the server sends the whole file if it changed since the previous attempt
+        requestBuilder.setHeader("If-Range", etag.get());
+      }
+    }
+    HttpResponse<InputStream> response =
+        client.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+    response.headers().firstValue("ETag").ifPresent(etag::set);
+    MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+    try (InputStream body = new DigestInputStream(response.body(), messageDigest)) {
+      if (response.statusCode() == 206 && offset > 0) {
+        // resuming, the digest must account for the bytes already there
+        try (InputStream existing =
+            new DigestInputStream(Files.newInputStream(part), messageDigest)) {
+          existing.transferTo(OutputStream.nullOutputStream());
+        }
+        try (OutputStream out = Files.newOutputStream(part, StandardOpenOption.APPEND)) {
+          body.transferTo(out);
+        }
+      } else if (response.statusCode() == 200) {
+        Files.copy(body, part, StandardCopyOption.REPLACE_EXISTING);
+      } else if (response.statusCode() == 416) {
+        // the partial file cannot be resumed, starting over on the next attempt
+        Files.deleteIfExists(part);
+        throw new IOException("Range not satisfiable for " + part.getFileName());
+      } else {
+        throw new HttpStatusException(response.statusCode());
+      }
+    }
+    return hex(messageDigest.digest());
+  }
+
+  private void downloadSegments(String packageUrl, Path part, long size, int segments)
+      throws IOException, InterruptedException {
+    try (RandomAccessFile file = new RandomAccessFile(part.toFile(), "rw")) {
+      file.setLength(size);
+    }
+    long segmentSize = (size + segments - 1) / segments;
+    try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+      List<Callable<Void>> tasks = new ArrayList<>(segments);
+      for (long start = 0; start < size; start += segmentSize) {
+        long first = start;
+        long last = Math.min(size, start + segmentSize) - 1;
+        tasks.add(
+            () ->
+                retry(
+                    () -> downloadSegment(packageUrl, channel, first, last),
+                    DOWNLOAD_RETRY_INTERVAL,
+                    e ->
+                        !(e instanceof RangeNotSupportedException)
+                            && !(e instanceof HttpStatusException hse && hse.clientError())));
+      }
+      ConcurrencyUtils.invokeAll(tasks, segments);
+    } catch (ConcurrencyUtils.ConcurrencyException e) {
+      if (e.getCause() instanceof RetryUtils.RetryException
+          && e.getCause().getCause() instanceof RangeNotSupportedException rnse) {
+        throw rnse;
+      }
+      throw e;
+    }
+  }
+
+  private Void downloadSegment(String packageUrl, FileChannel channel, long first, long last)
+      throws IOException, InterruptedException {
+    HttpRequest request =
+        requestBuilder()
+            .uri(URI.create(packageUrl))
+            .setHeader("Range", "bytes=" + first + "-" + last)
+            .GET()
+            .build();
+    HttpResponse<InputStream> response =
+        client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    try (InputStream body = response.body()) {
+      if (response.statusCode() == 200) {
+        throw new RangeNotSupportedException();
+      } else if (response.statusCode() != 206) {
+        throw new HttpStatusException(response.statusCode());
+      }
+      byte[] buffer = new byte[64 * 1024];
+      long position = first;
+      int read;
+      while ((read = body.read(buffer)) != -1) {
+        if (read > last + 1 - position) {
+          // writing past the range would overwrite the next segment
+          throw new IOException(
+              "Segment "
+                  + first
+                  + "-"
+                  + last
+                  + " overrun, received more than "
+                  + (last - first + 1)
+                  + " bytes");
+        }
+        // positional writes, segments can share the channel
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+        while (bytes.hasRemaining()) {
+          position += channel.write(bytes, position);
+        }
+      }
+      if (position != last + 1) {
+        throw new IOException(
+            "Incomplete segment " + first + "-" + last + ", received up to " + (position - 1));
+      }
+    }
+    return null;
+  }
+
+  // lighter than fetching the whole package
+  Package.Status findStatus(String statusUrl) throws IOException, InterruptedException {
+    HttpRequest request = requestBuilder().uri(URI.create(statusUrl)).GET().build();
+    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new HttpStatusException(response.statusCode());
+    }
+    return Utils.GSON.fromJson(response.body(), Package.Status.class);
   }
 
   Package findPackage(String packageUrl) throws IOException, InterruptedException {
@@ -275,6 +847,34 @@ final class CloudsmithPackageAccess {
     return Utils.GSON.fromJson(responseBody, Package.class);
   }
 
+  private CompletableFuture<Page> pageAsync(String url) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return retry(() -> page(url));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+          }
+        },
+        PREFETCH_EXECUTOR);
+  }
+
+  // client errors (e.g. 404) will not get better with another attempt, the I/O error of the last
+  // attempt is re-thrown as it is
+  private static <T> T retryOnServerError(Callable<T> task, Duration retryInterval)
+      throws IOException, InterruptedException {
+    try {
+      return retry(
+          task, retryInterval, e -> !(e instanceof HttpStatusException hse && hse.clientError()));
+    } catch (RetryUtils.RetryException e) {
+      if (e.getCause() instanceof IOException ioe) {
+        throw ioe;
+      }
+      throw e;
+    }
+  }
+
   private HttpRequest.Builder requestBuilder() {
     return auth(HttpRequest.newBuilder());
   }
@@ -282,4 +882,142 @@ final class CloudsmithPackageAccess {
   private HttpRequest.Builder auth(HttpRequest.Builder builder) {
     return builder.setHeader("X-Api-Key", input.source().apiKey());
   }
+
+  static class RangeNotSupportedException extends IOException {
+
+    RangeNotSupportedException() {
+      super("Server does not support range requests");
+    }
+  }
+
+  static class HttpStatusException extends IOException {
+
+    private final int statusCode;
+
+    HttpStatusException(int statusCode) {
+      this(statusCode, "HTTP response code is " + statusCode);
+    }
+
+    HttpStatusException(int statusCode, String message) {
+      super(message);
+      this.statusCode = statusCode;
+    }
+
+    boolean clientError() {
+      return statusCode >= 400 && statusCode < 500;
+    }
+  }
+
+  // search criteria on top of the ones from the input
+  static class Search {
+
+    static final String SORT_NEWEST_VERSION_FIRST = "-version";
+
+    private ZonedDateTime uploadedSince;
+    private Collection<String> filenames;
+    private boolean logQuery = true;
+    private String sort;
+    private Predicate<Package> continueWhile;
+
+    ZonedDateTime uploadedSince() {
+      return uploadedSince;
+    }
+
+    Collection<String> filenames() {
+      return filenames;
+    }
+
+    boolean logQuery() {
+      return logQuery;
+    }
+
+    String sort() {
+      return sort;
+    }
+
+    Predicate<Package> continueWhile() {
+      return continueWhile;
+    }
+
+    Search uploadedSince(ZonedDateTime uploadedSince) {
+      this.uploadedSince = uploadedSince;
+      return this;
+    }
+
+    // exact file names, the other criteria of the configuration (name, version, type) do not apply
+    Search filenames(Collection<String> filenames) {
+      this.filenames = filenames;
+      return this;
+    }
+
+    Search logQuery(boolean logQuery) {
+      this.logQuery = logQuery;
+      return this;
+    }
+
+    Search sort(String sort) {
+      this.sort = sort;
+      return this;
+    }
+
+    // the listing stops at the first package that does not match, useful with a sort order
+    Search continueWhile(Predicate<Package> continueWhile) {
+      this.continueWhile = continueWhile;
+      return this;
+    }
+  }
+
+  private record Target(String repository, String distribution) {
+
+    String origin() {
+      return distribution == null ? repository : repository + "/" + distribution;
+    }
+  }
+
+  private class PageIterator implements Iterator<Page> {
+
+    private final String url;
+    private final Target target;
+    private int pageNumber = 0;
+    private CompletableFuture<Page> nextPage;
+
+    private PageIterator(String url, Target target) {
+      this.url = url;
+      this.target = target;
+      this.nextPage = pageAsync(url);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextPage != null;
+    }
+
+    @Override
+    public Page next() {
+      if (nextPage == null) {
+        throw new NoSuchElementException();
+      }
+      Page page;
+      try {
+        page = nextPage.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+      pageNumber++;
+      if (page.nextLink() != null) {
+        nextPage = pageAsync(page.nextLink());
+      } else if (pageNumber < page.pageTotal()) {
+        nextPage = pageAsync(pageUrl(url, pageNumber + 1));
+      } else {
+        nextPage = null;
+      }
+      page.packages().forEach(p -> p.origin(target.origin()));
+      return page;
+    }
+  }
+
+  private record Page(List<Package> packages, String nextLink, int pageTotal) {}
 }
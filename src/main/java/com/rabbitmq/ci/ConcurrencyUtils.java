@@ -0,0 +1,61 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+final class ConcurrencyUtils {
+
+  private ConcurrencyUtils() {}
+
+  // results are in list order, the first failure to complete cancels the remaining tasks
+  static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int concurrency)
+      throws InterruptedException {
+    if (tasks.isEmpty()) {
+      return Collections.emptyList();
+    }
+    int threads = Math.max(1, Math.min(concurrency, tasks.size()));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+      Map<Future<T>, Integer> indexes = new HashMap<>(tasks.size());
+      for (int i = 0; i < tasks.size(); i++) {
+        indexes.put(completionService.submit(tasks.get(i)), i);
+      }
+      List<T> results = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+      // waiting in completion order, a failure surfaces without waiting for earlier tasks
+      for (int i = 0; i < tasks.size(); i++) {
+        Future<T> future = completionService.take();
+        try {
+          results.set(indexes.get(future), future.get());
+        } catch (ExecutionException e) {
+          throw new ConcurrencyException("Error while running task", e.getCause());
+        }
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  static class ConcurrencyException extends RuntimeException {
+
+    public ConcurrencyException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class DownloadCache {
+
+  private static final String LOCK_FILE = ".lock";
+
+  private final Path directory;
+  private final long maxSize;
+  private final CacheFiles cacheFiles;
+
+  DownloadCache(Path directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.cacheFiles = new CacheFiles(directory.resolve(LOCK_FILE));
+  }
+
+  // hard link, falling back to a copy, false if not cached
+  boolean retrieve(String sha256, long size, Path destination)
+      throws IOException, NoSuchAlgorithmException {
+    Path file = directory.resolve(sha256);
+    boolean linked =
+        cacheFiles.locked(
+            () -> {
+              if (!Files.isRegularFile(file)) {
+                return false;
+              }
+              // access time for LRU eviction, last-modified is more reliable than atime
+              Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+              Files.deleteIfExists(destination);
+              try {
+                Files.createLink(destination, file);
+              } catch (UnsupportedOperationException | IOException e) {
+                // e.g. not the same file system
+                Files.copy(file, destination, StandardCopyOption.REPLACE_EXISTING);
+              }
+              return true;
+            });
+    if (!linked) {
+      return false;
+    }
+    // a build step may have modified the entry in place, through a hard link to it
+    if ((size > 0 && Files.size(destination) != size)
+        || !sha256.equals(CloudsmithPackageAccess.sha256(destination))) {
+      Files.delete(destination);
+      cacheFiles.locked(() -> Files.deleteIfExists(file));
+      return false;
+    }
+    return true;
+  }
+
+  // the checksum must have been verified
+  void store(String sha256, Path file) throws IOException {
+    cacheFiles.locked(
+        () -> {
+          Path cached = directory.resolve(sha256);
+          if (!Files.isRegularFile(cached)) {
+            CacheFiles.copy(file, cached);
+          }
+          evict();
+          return null;
+        });
+  }
+
+  private void evict() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (Stream<Path> entries = Files.list(directory)) {
+      entries
+          .filter(Files::isRegularFile)
+          .filter(f -> !f.getFileName().toString().startsWith("."))
+          .filter(f -> !f.getFileName().toString().endsWith(".tmp"))
+          .forEach(files::add);
+    }
+    long size = 0;
+    for (Path f : files) {
+      size += Files.size(f);
+    }
+    files.sort(Comparator.comparing(DownloadCache::lastModified));
+    for (Path f : files) {
+      if (size <= maxSize) {
+        break;
+      }
+      size -= Files.size(f);
+      Files.delete(f);
+    }
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class HashCache {
+
+  private static final Type ENTRIES_TYPE = new TypeToken<Map<String, String>>() {}.getType();
+
+  private final Path file;
+  private final CacheFiles cacheFiles;
+  private volatile Map<String, String> entries;
+
+  HashCache(Path file) {
+    this.file = file.toAbsolutePath();
+    this.cacheFiles = new CacheFiles(this.file.resolveSibling(this.file.getFileName() + ".lock"));
+  }
+
+  String sha256(Path path) throws IOException, NoSuchAlgorithmException {
+    String key = key(path);
+    String sha256 = entries().get(key);
+    if (sha256 == null) {
+      sha256 = CloudsmithPackageAccess.sha256(path);
+      put(key, sha256);
+    }
+    return sha256;
+  }
+
+  // a modified file gets another key, so it is hashed again
+  static String key(Path path) throws IOException {
+    Path absolutePath = path.toAbsolutePath();
+    BasicFileAttributes attributes = Files.readAttributes(absolutePath, BasicFileAttributes.class);
+    return absolutePath
+        + "|"
+        + attributes.size()
+        + "|"
+        + attributes.lastModifiedTime()
+        + "|"
+        + attributes.fileKey();
+  }
+
+  private Map<String, String> entries() throws IOException {
+    if (entries == null) {
+      cacheFiles.locked(() -> entries = read());
+    }
+    return entries;
+  }
+
+  private void put(String key, String sha256) throws IOException {
+    cacheFiles.locked(
+        () -> {
+          // merges with what other processes may have written in the meantime
+          Map<String, String> merged = read();
+          merged.putAll(entries);
+          // older entries for the same file are stale
+          String pathPrefix = key.substring(0, key.indexOf('|') + 1);
+          merged.keySet().removeIf(k -> k.startsWith(pathPrefix));
+          merged.put(key, sha256);
+          CacheFiles.write(file, Utils.GSON.toJson(merged));
+          return entries = merged;
+        });
+  }
+
+  private Map<String, String> read() {
+    Map<String, String> content = new ConcurrentHashMap<>();
+    Map<String, String> stored = CacheFiles.read(file, ENTRIES_TYPE);
+    if (stored != null) {
+      content.putAll(stored);
+    }
+    return content;
+  }
+}
@@ -5,6 +5,11 @@
  */
 package com.rabbitmq.ci;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 class Input {
 
   private Params params;
@@ -38,6 +43,17 @@ class Input {
     return this;
   }
 
+  // comma-separated list
+  private static List<String> list(String value) {
+    if (value == null || value.isBlank()) {
+      return Collections.emptyList();
+    }
+    return Arrays.stream(value.split(","))
+        .map(String::trim)
+        .filter(v -> !v.isEmpty())
+        .collect(Collectors.toList());
+  }
+
   @Override
   public String toString() {
     return "Input{" + "params=" + params + ", source=" + source + ", version=" + version + '}';
@@ -49,11 +65,16 @@ class Input {
     private String version;
     private String distribution;
     private String type;
+    private String uploaded_at; // cursor for incremental check
 
     public String version() {
       return version;
     }
 
+    public String uploadedAt() {
+      return uploaded_at;
+    }
+
     public String distribution() {
       return distribution;
     }
@@ -66,16 +87,31 @@ class Input {
   static class Params {
 
     private boolean delete;
+    private boolean verify;
     private boolean do_delete;
     private boolean republish;
     private String globs;
     private String tags;
     private String local_path;
     private String version; // to extract version for "raw" packages when uploading files
+    private int upload_concurrency = 1;
+    private long multipart_upload_threshold = 1024; // in MB
+    private long multipart_chunk_size = 100; // in MB
+    private String hash_cache;
+    private long sync_timeout = 300; // in seconds
+    private long sync_polling_initial_interval = 1; // in seconds
+    private long sync_polling_max_interval = 10; // in seconds
+    private String sync_polling_strategy = "package"; // or "search"
     // for deletion
     private String version_filter;
     private int keep_last_n;
     private boolean keep_last_minor_patches = false;
+    // for download
+    private int download_concurrency = 1;
+    private String download_cache;
+    private long download_cache_max_size = 1024; // in MB
+    private long segmented_download_threshold = 256; // in MB
+    private int download_segments = 4;
 
     public String localPath() {
       return local_path;
@@ -97,6 +133,10 @@ class Input {
       return delete;
     }
 
+    public boolean verify() {
+      return verify;
+    }
+
     public int keepLastN() {
       return keep_last_n;
     }
@@ -117,6 +157,58 @@ class Input {
       return republish;
     }
 
+    public int uploadConcurrency() {
+      return upload_concurrency;
+    }
+
+    public long multipartUploadThreshold() {
+      return multipart_upload_threshold;
+    }
+
+    public long multipartChunkSize() {
+      return multipart_chunk_size;
+    }
+
+    public String hashCache() {
+      return hash_cache;
+    }
+
+    public long syncTimeout() {
+      return sync_timeout;
+    }
+
+    public long syncPollingInitialInterval() {
+      return sync_polling_initial_interval;
+    }
+
+    public long syncPollingMaxInterval() {
+      return sync_polling_max_interval;
+    }
+
+    public String syncPollingStrategy() {
+      return sync_polling_strategy;
+    }
+
+    public int downloadConcurrency() {
+      return download_concurrency;
+    }
+
+    public String downloadCache() {
+      return download_cache;
+    }
+
+    public long downloadCacheMaxSize() {
+      return download_cache_max_size;
+    }
+
+    public long segmentedDownloadThreshold() {
+      return segmented_download_threshold;
+    }
+
+    public int downloadSegments() {
+      return download_segments;
+    }
+
     @Override
     public String toString() {
       return "Params{"
@@ -143,6 +235,8 @@ class Input {
     private String type;
     private String distribution;
     private String order_by;
+    private String search_cache;
+    private boolean incremental_check = false;
 
     // TODO add tags to filter out for check?
 
@@ -174,10 +268,26 @@ class Input {
       return distribution;
     }
 
+    public List<String> repositories() {
+      return list(repository);
+    }
+
+    public List<String> distributions() {
+      return list(distribution);
+    }
+
     public boolean orderByVersion() {
       return order_by == null || "version".equals(order_by);
     }
 
+    public String searchCache() {
+      return search_cache;
+    }
+
+    public boolean incrementalCheck() {
+      return incremental_check;
+    }
+
     @Override
     public String toString() {
       return "Source{"
@@ -10,19 +10,35 @@ import java.time.ZonedDateTime;
 class Package {
 
   private String self_url;
+  private String status_url;
   private boolean is_sync_completed;
   private boolean is_sync_failed;
   private String filename;
   private String cdn_url;
   private String version;
   private String checksum_sha256;
+  private long size;
   private String status_reason;
   private ZonedDateTime uploaded_at;
+  // repository and distribution the package was found in, not part of the JSON document
+  private transient String origin;
 
   String selfUrl() {
     return this.self_url;
   }
 
+  String statusUrl() {
+    return this.status_url;
+  }
+
+  Status status() {
+    Status status = new Status();
+    status.is_sync_completed = this.is_sync_completed;
+    status.is_sync_failed = this.is_sync_failed;
+    status.status_reason = this.status_reason;
+    return status;
+  }
+
   boolean isSyncCompleted() {
     return this.is_sync_completed;
   }
@@ -47,6 +63,11 @@ class Package {
     return this.checksum_sha256;
   }
 
+  // in bytes, 0 if unknown
+  long size() {
+    return this.size;
+  }
+
   String statusReason() {
     return this.status_reason;
   }
@@ -55,6 +76,14 @@ class Package {
     return uploaded_at;
   }
 
+  String origin() {
+    return this.origin;
+  }
+
+  void origin(String origin) {
+    this.origin = origin;
+  }
+
   void setIs_sync_completed(boolean is_sync_completed) {
     this.is_sync_completed = is_sync_completed;
   }
@@ -71,10 +100,38 @@ class Package {
     this.filename = filename;
   }
 
+  void setChecksum_sha256(String checksum_sha256) {
+    this.checksum_sha256 = checksum_sha256;
+  }
+
+  void setSize(long size) {
+    this.size = size;
+  }
+
   public void setUploaded_at(ZonedDateTime uploaded_at) {
     this.uploaded_at = uploaded_at;
   }
 
+  // synchronization status, as returned by the status endpoint of a package
+  static class Status {
+
+    private boolean is_sync_completed;
+    private boolean is_sync_failed;
+    private String status_reason;
+
+    boolean isSyncCompleted() {
+      return this.is_sync_completed;
+    }
+
+    boolean isSyncFailed() {
+      return this.is_sync_failed;
+    }
+
+    String statusReason() {
+      return this.status_reason;
+    }
+  }
+
   @Override
   public String toString() {
     return "Package{"
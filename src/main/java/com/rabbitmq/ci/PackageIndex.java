@@ -0,0 +1,53 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class PackageIndex {
+
+  private final List<Package> packages;
+  private final Map<String, List<Package>> byVersion = new LinkedHashMap<>();
+  private final Map<String, ZonedDateTime> latestUploadDateByVersion = new HashMap<>();
+
+  // one pass, so that planning stays linear on repositories with many files
+  PackageIndex(Collection<Package> packages) {
+    this.packages = new ArrayList<>(packages);
+    for (Package p : this.packages) {
+      byVersion.computeIfAbsent(p.version(), v -> new ArrayList<>()).add(p);
+      if (p.uploadedAt() != null) {
+        latestUploadDateByVersion.merge(
+            p.version(), p.uploadedAt(), (d1, d2) -> d1.isAfter(d2) ? d1 : d2);
+      }
+    }
+  }
+
+  List<Package> packages() {
+    return Collections.unmodifiableList(packages);
+  }
+
+  // in order of first appearance in the listing
+  Set<String> versions() {
+    return Collections.unmodifiableSet(byVersion.keySet());
+  }
+
+  List<Package> byVersion(String version) {
+    return byVersion.getOrDefault(version, Collections.emptyList());
+  }
+
+  // null if no package of the version has an upload date
+  ZonedDateTime latestUploadDate(String version) {
+    return latestUploadDateByVersion.get(version);
+  }
+}
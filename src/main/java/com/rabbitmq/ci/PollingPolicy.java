@@ -0,0 +1,58 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+final class PollingPolicy {
+
+  static final double MULTIPLIER = 2.0;
+  static final double JITTER = 0.2;
+
+  private final Duration initialInterval;
+  private final Duration maxInterval;
+  private final Duration timeout;
+
+  PollingPolicy(Duration initialInterval, Duration maxInterval, Duration timeout) {
+    if (timeout.isNegative() || timeout.isZero()) {
+      throw new IllegalArgumentException("sync_timeout must be greater than 0");
+    }
+    if (initialInterval.isNegative() || initialInterval.isZero()) {
+      throw new IllegalArgumentException("sync_polling_initial_interval must be greater than 0");
+    }
+    if (maxInterval.compareTo(initialInterval) < 0) {
+      throw new IllegalArgumentException(
+          "sync_polling_max_interval must be greater than or equal to "
+              + "sync_polling_initial_interval");
+    }
+    this.initialInterval = initialInterval;
+    this.maxInterval = maxInterval;
+    this.timeout = timeout;
+  }
+
+  static PollingPolicy from(Input.Params params) {
+    return new PollingPolicy(
+        Duration.ofSeconds(params.syncPollingInitialInterval()),
+        Duration.ofSeconds(params.syncPollingMaxInterval()),
+        Duration.ofSeconds(params.syncTimeout()));
+  }
+
+  // attempt starts at 1 for the delay after the first poll
+  Duration delay(int attempt) {
+    double interval =
+        Math.min(
+            maxInterval.toMillis(),
+            initialInterval.toMillis() * Math.pow(MULTIPLIER, Math.max(0, attempt - 1)));
+    // packages uploaded at the same time must not be polled in lockstep
+    double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+    return Duration.ofMillis(Math.round(interval * jitter));
+  }
+
+  Duration timeout() {
+    return timeout;
+  }
+}
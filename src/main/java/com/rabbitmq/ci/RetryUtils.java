@@ -7,6 +7,7 @@ package com.rabbitmq.ci;
 
 import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.function.Predicate;
 
 final class RetryUtils {
 
@@ -20,12 +21,20 @@ final class RetryUtils {
   }
 
   static <T> T retry(Callable<T> task, Duration retryInterval) throws InterruptedException {
+    return retry(task, retryInterval, e -> true);
+  }
+
+  static <T> T retry(Callable<T> task, Duration retryInterval, Predicate<Exception> retryOn)
+      throws InterruptedException {
     int attempt = 0;
     Exception lastException = null;
     while (++attempt <= MAX_ATTEMPTS) {
       try {
         return task.call();
       } catch (Exception e) {
+        if (!retryOn.test(e)) {
+          throw new RetryException("Non-retriable error", e);
+        }
         lastException = e;
         Thread.sleep(retryInterval.toMillis());
       }
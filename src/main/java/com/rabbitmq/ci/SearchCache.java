@@ -0,0 +1,120 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+final class SearchCache {
+
+  // queries change over time (e.g. the upload date of incremental checks), so entries would pile up
+  static final Duration MAX_UNUSED_AGE = Duration.ofDays(7);
+
+  private final Path directory;
+
+  SearchCache(Path directory) {
+    this.directory = directory;
+    evictUnused(Instant.now().minus(MAX_UNUSED_AGE));
+  }
+
+  Entry get(String url) {
+    Path file = file(url);
+    Entry entry = CacheFiles.read(file, Entry.class);
+    // protects against (unlikely) key collisions
+    if (entry == null || !url.equals(entry.url)) {
+      return null;
+    }
+    try {
+      // the modification time tells when the entry was last used
+      Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+    } catch (IOException e) {
+      // ignored, the entry may just be evicted earlier
+    }
+    return entry;
+  }
+
+  void put(Entry entry) throws IOException {
+    CacheFiles.write(file(entry.url), Utils.GSON.toJson(entry));
+  }
+
+  private void evictUnused(Instant unusedSince) {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      files
+          .filter(f -> f.getFileName().toString().endsWith(".json"))
+          .forEach(
+              f -> {
+                try {
+                  if (Files.getLastModifiedTime(f).toInstant().isBefore(unusedSince)) {
+                    Files.deleteIfExists(f);
+                  }
+                } catch (IOException e) {
+                  // ignored, another process may have evicted it
+                }
+              });
+    } catch (IOException e) {
+      // ignored, eviction is best effort
+    }
+  }
+
+  private Path file(String url) {
+    try {
+      return directory.resolve(
+          CloudsmithPackageAccess.sha256(url.getBytes(StandardCharsets.UTF_8)) + ".json");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // validators make the next identical search a conditional request
+  static class Entry {
+
+    private String url;
+    private String etag;
+    private String last_modified;
+    private String link;
+    private int page_total;
+    private String body;
+
+    Entry(String url, String etag, String lastModified, String link, int pageTotal, String body) {
+      this.url = url;
+      this.etag = etag;
+      this.last_modified = lastModified;
+      this.link = link;
+      this.page_total = pageTotal;
+      this.body = body;
+    }
+
+    String etag() {
+      return etag;
+    }
+
+    String lastModified() {
+      return last_modified;
+    }
+
+    String link() {
+      return link;
+    }
+
+    int pageTotal() {
+      return page_total;
+    }
+
+    String body() {
+      return body;
+    }
+  }
+}
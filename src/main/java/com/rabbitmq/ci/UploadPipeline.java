@@ -0,0 +1,203 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import static com.rabbitmq.ci.RetryUtils.retry;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class UploadPipeline {
+
+  static final Duration RETRY_INTERVAL = Duration.ofSeconds(5);
+
+  private static final Upload END = new Upload(null);
+
+  private final CloudsmithPackageAccess access;
+  private final HashCache hashCache;
+  private final Map<String, Object> creationParameters;
+  private final String type;
+  private final int hashWorkers;
+  private final int networkWorkers;
+
+  UploadPipeline(
+      CloudsmithPackageAccess access,
+      HashCache hashCache,
+      Map<String, Object> creationParameters,
+      String type,
+      int hashWorkers,
+      int networkWorkers) {
+    this.access = access;
+    this.hashCache = hashCache;
+    this.creationParameters = creationParameters;
+    this.type = type;
+    this.hashWorkers = Math.max(1, hashWorkers);
+    this.networkWorkers = Math.max(1, networkWorkers);
+  }
+
+  List<Upload> run(List<String> files) throws InterruptedException {
+    List<Upload> uploads = new ArrayList<>(files.size());
+    files.forEach(f -> uploads.add(new Upload(f)));
+    if (uploads.isEmpty()) {
+      return uploads;
+    }
+    // hashing overlaps with the transfer of the previous files, a failed file skips the next stages
+    int capacity = 2 * networkWorkers;
+    BlockingQueue<Upload> toHash = new ArrayBlockingQueue<>(capacity);
+    BlockingQueue<Upload> toUpload = new ArrayBlockingQueue<>(capacity);
+    BlockingQueue<Upload> toCreate = new ArrayBlockingQueue<>(capacity);
+    ExecutorService executor =
+        Executors.newFixedThreadPool(hashWorkers + networkWorkers + networkWorkers);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      workers.addAll(
+          stage(
+              executor,
+              toHash,
+              toUpload,
+              hashWorkers,
+              networkWorkers,
+              u ->
+                  u.sha256 =
+                      hashCache == null
+                          ? CloudsmithPackageAccess.sha256(u.path())
+                          : hashCache.sha256(u.path())));
+      workers.addAll(
+          stage(
+              executor,
+              toUpload,
+              toCreate,
+              networkWorkers,
+              networkWorkers,
+              // retried by the access, a failed multipart upload must not start over
+              u -> u.identifier = access.uploadFile(u.path(), u.sha256)));
+      workers.addAll(
+          stage(
+              executor,
+              toCreate,
+              null,
+              networkWorkers,
+              0,
+              u ->
+                  u.created =
+                      retry(
+                          () -> access.create(u.identifier, creationParameters, type),
+                          RETRY_INTERVAL,
+                          UploadPipeline::retriable)));
+      for (Upload upload : uploads) {
+        toHash.put(upload);
+      }
+      for (int i = 0; i < hashWorkers; i++) {
+        toHash.put(END);
+      }
+      for (Future<?> worker : workers) {
+        try {
+          worker.get();
+        } catch (ExecutionException e) {
+          throw new ConcurrencyUtils.ConcurrencyException("Error in upload pipeline", e.getCause());
+        }
+      }
+      return uploads;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // client errors (e.g. authentication) will not get better with another attempt
+  private static boolean retriable(Exception e) {
+    return !(e instanceof CloudsmithPackageAccess.HttpStatusException hse && hse.clientError());
+  }
+
+  private static List<Future<?>> stage(
+      ExecutorService executor,
+      BlockingQueue<Upload> in,
+      BlockingQueue<Upload> out,
+      int workers,
+      int nextStageWorkers,
+      Step step) {
+    AtomicInteger running = new AtomicInteger(workers);
+    List<Future<?>> futures = new ArrayList<>(workers);
+    for (int i = 0; i < workers; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                while (true) {
+                  Upload upload = in.take();
+                  if (upload == END) {
+                    // the last worker of the stage signals the end to the next stage
+                    if (running.decrementAndGet() == 0 && out != null) {
+                      for (int j = 0; j < nextStageWorkers; j++) {
+                        out.put(END);
+                      }
+                    }
+                    return null;
+                  }
+                  if (upload.error == null) {
+                    try {
+                      step.apply(upload);
+                    } catch (RetryUtils.RetryException e) {
+                      // the cause tells what went wrong (e.g. HTTP status), not the retry
+                      upload.error = e.getCause() instanceof Exception cause ? cause : e;
+                    } catch (Exception e) {
+                      upload.error = e;
+                    }
+                  }
+                  if (out != null) {
+                    out.put(upload);
+                  }
+                }
+              }));
+    }
+    return futures;
+  }
+
+  @FunctionalInterface
+  private interface Step {
+
+    void apply(Upload upload) throws Exception;
+  }
+
+  static class Upload {
+
+    private final String file;
+    private volatile String sha256;
+    private volatile String identifier;
+    private volatile Package created;
+    private volatile Exception error;
+
+    private Upload(String file) {
+      this.file = file;
+    }
+
+    String file() {
+      return file;
+    }
+
+    private Path path() {
+      return Paths.get(file);
+    }
+
+    // null for a duplicated raw package
+    Package created() {
+      return created;
+    }
+
+    Exception error() {
+      return error;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CacheFilesTest {
+
+  private static final Type MAP_TYPE = new TypeToken<Map<String, String>>() {}.getType();
+
+  @TempDir Path directory;
+
+  @Test
+  void readShouldReturnWrittenContentAndIgnoreCorruptedFiles() throws Exception {
+    Path file = directory.resolve("cache").resolve("entries.json");
+    Map<String, String> content = CacheFiles.read(file, MAP_TYPE);
+    assertThat(content).isNull();
+
+    CacheFiles.write(file, "{\"key\": \"value\"}");
+    content = CacheFiles.read(file, MAP_TYPE);
+    assertThat(content).containsEntry("key", "value");
+    CacheFiles.write(file, "{\"key\": \"other value\"}");
+    content = CacheFiles.read(file, MAP_TYPE);
+    assertThat(content).containsEntry("key", "other value");
+    // no temporary file left behind
+    try (Stream<Path> files = Files.list(file.getParent())) {
+      assertThat(files).containsExactly(file);
+    }
+
+    Files.writeString(file, "{\"key\": ");
+    content = CacheFiles.read(file, MAP_TYPE);
+    assertThat(content).isNull();
+  }
+
+  @Test
+  void lockedShouldCreateLockFileAndReturnResult() throws Exception {
+    Path lockFile = directory.resolve("cache").resolve(".lock");
+    CacheFiles cacheFiles = new CacheFiles(lockFile);
+    assertThat(cacheFiles.locked(() -> Files.exists(lockFile))).isTrue();
+  }
+}
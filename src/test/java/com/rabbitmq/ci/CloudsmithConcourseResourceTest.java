@@ -5,26 +5,42 @@
  */
 package com.rabbitmq.ci;
 
+import static com.rabbitmq.ci.CloudsmithLogic.DownloadOutcome.CACHED;
+import static com.rabbitmq.ci.CloudsmithLogic.DownloadOutcome.FAILED;
+import static com.rabbitmq.ci.CloudsmithLogic.DownloadOutcome.FETCHED;
+import static com.rabbitmq.ci.CloudsmithLogic.DownloadOutcome.PRESENT;
 import static com.rabbitmq.ci.CloudsmithLogic.checkForNewVersions;
+import static com.rabbitmq.ci.CloudsmithLogic.downloadCounts;
+import static com.rabbitmq.ci.CloudsmithLogic.downloadSchedule;
+import static com.rabbitmq.ci.CloudsmithLogic.downloadSummary;
 import static com.rabbitmq.ci.CloudsmithLogic.extractVersion;
 import static com.rabbitmq.ci.CloudsmithLogic.filterForDeletion;
 import static com.rabbitmq.ci.CloudsmithLogic.globPredicate;
+import static com.rabbitmq.ci.CloudsmithLogic.isPresent;
 import static com.rabbitmq.ci.CloudsmithLogic.lastMinorPatches;
 import static com.rabbitmq.ci.CloudsmithLogic.latestMinor;
+import static com.rabbitmq.ci.CloudsmithLogic.syncPollingStrategy;
 import static com.rabbitmq.ci.CloudsmithPackageAccess.uploadJsonBody;
 import static java.util.Arrays.asList;
 import static java.util.Collections.shuffle;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 
+import com.rabbitmq.ci.CloudsmithLogic.DownloadResult;
 import com.rabbitmq.ci.CloudsmithLogic.PackageVersion;
+import com.rabbitmq.ci.CloudsmithLogic.Verification;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -90,6 +106,20 @@ public class CloudsmithConcourseResourceTest {
     return p;
   }
 
+  static Package p(String name, long size) {
+    Package p = p(name);
+    p.setSize(size);
+    return p;
+  }
+
+  static Package p(String name, String content) throws NoSuchAlgorithmException {
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    Package p = p(name);
+    p.setSize(bytes.length);
+    p.setChecksum_sha256(CloudsmithPackageAccess.sha256(bytes));
+    return p;
+  }
+
   static PackageVersion pv(String version, String date) {
     PackageVersion pv = new PackageVersion(version);
     pv.lastPackageDate =
@@ -569,4 +599,149 @@ public class CloudsmithConcourseResourceTest {
     Collections.shuffle(versions);
     return versions;
   }
+
+  @Test
+  void isPresentShouldCompareSizeAndChecksum(@TempDir Path directory) throws Exception {
+    Path file = Files.writeString(directory.resolve("package.deb"), "package content");
+    Package p = p("package.deb", "package content");
+    assertThat(isPresent(file, p)).isTrue();
+    assertThat(isPresent(directory.resolve("missing.deb"), p)).isFalse();
+
+    Files.write(file, "other content".getBytes(StandardCharsets.UTF_8));
+    assertThat(isPresent(file, p)).isFalse();
+    Files.write(file, "PACKAGE CONTENT".getBytes(StandardCharsets.UTF_8));
+    assertThat(isPresent(file, p)).isFalse();
+  }
+
+  @Test
+  void downloadScheduleShouldStartWithLargestFiles() {
+    List<Package> packages =
+        asList(p("small", 10), p("large", 1000), p("unknown", 0), p("medium", 100));
+    assertThat(downloadSchedule(packages))
+        .extracting(Package::filename)
+        .containsExactly("large", "medium", "small", "unknown");
+    assertThat(packages).extracting(Package::filename).startsWith("small");
+  }
+
+  @Test
+  void downloadSummaryShouldReportCriticalPathAndTotal() {
+    String summary =
+        downloadSummary(
+            asList(
+                new DownloadResult(FETCHED, "a", 1024 * 1024, Duration.ofSeconds(8)),
+                new DownloadResult(FETCHED, "b", 1024 * 1024, Duration.ofSeconds(2)),
+                new DownloadResult(PRESENT, "c")),
+            Duration.ofMillis(8500));
+    assertThat(summary)
+        .isEqualTo(
+            String.format(
+                "Fetched %.1f MB in %.1f s: longest transfer %.1f s (critical path), "
+                    + "transfers total %.1f s",
+                2.0, 8.5, 8.0, 10.0));
+  }
+
+  @Test
+  void downloadCountsShouldCountEachOutcome() {
+    assertThat(
+            downloadCounts(
+                asList(
+                    new DownloadResult(PRESENT, "a"),
+                    new DownloadResult(CACHED, "b"),
+                    new DownloadResult(CACHED, "c"),
+                    new DownloadResult(FETCHED, "d", 1024, Duration.ofSeconds(1)),
+                    new DownloadResult(FAILED, "e"))))
+        .isEqualTo("1 file(s) already present, 2 from cache, 1 fetched, 1 failed");
+  }
+
+  @Test
+  void verifyShouldReportMismatchedMissingAndExtraFiles(@TempDir Path directory) throws Exception {
+    Map<Path, Package> expected = new LinkedHashMap<>();
+    for (String name : asList("ok.deb", "mismatched.deb", "missing.deb")) {
+      expected.put(directory.resolve(name), p(name, name));
+    }
+    Files.writeString(directory.resolve("ok.deb"), "ok.deb");
+    Files.writeString(directory.resolve("mismatched.deb"), "MISMATCHED.deb");
+    Files.writeString(directory.resolve("extra.deb"), "extra.deb");
+    List<Path> localFiles =
+        asList(
+            directory.resolve("extra.deb"),
+            directory.resolve("mismatched.deb"),
+            directory.resolve("ok.deb"));
+
+    Verification verification = CloudsmithLogic.verify(expected, localFiles, 2);
+
+    assertThat(verification.ok()).containsExactly(directory.resolve("ok.deb"));
+    assertThat(verification.mismatched()).containsExactly(directory.resolve("mismatched.deb"));
+    assertThat(verification.missing()).containsExactly(directory.resolve("missing.deb"));
+    assertThat(verification.extra()).containsExactly(directory.resolve("extra.deb"));
+    assertThat(verification.hasDiscrepancies()).isTrue();
+  }
+
+  @Test
+  void localFilesShouldListOnlyDownloadDirectories(@TempDir Path directory) throws Exception {
+    Files.writeString(directory.resolve("erlang.deb"), "");
+    Files.writeString(directory.resolve("erlang.deb.part"), "");
+    Files.writeString(directory.resolve("README.md"), "");
+    Files.createDirectories(directory.resolve(".git"));
+    Files.writeString(directory.resolve(".git").resolve("HEAD"), "");
+    Files.createDirectories(directory.resolve("rabbitmq-erlang"));
+    Files.writeString(directory.resolve("rabbitmq-erlang").resolve("erlang-nox.deb"), "");
+
+    assertThat(CloudsmithLogic.localFiles(List.of(directory), null))
+        .containsExactly(directory.resolve("README.md"), directory.resolve("erlang.deb"));
+    assertThat(CloudsmithLogic.localFiles(List.of(directory), "*.deb"))
+        .containsExactly(directory.resolve("erlang.deb"));
+    assertThat(
+            CloudsmithLogic.localFiles(
+                List.of(directory.resolve("rabbitmq-erlang"), directory.resolve("rabbitmq-other")),
+                "*.deb"))
+        .containsExactly(directory.resolve("rabbitmq-erlang").resolve("erlang-nox.deb"));
+  }
+
+  @Test
+  void syncPollingStrategyShouldRejectUnknownValues() {
+    assertThat(syncPollingStrategy(Utils.GSON.fromJson("{}", Input.Params.class)))
+        .isEqualTo("package");
+    assertThat(
+            syncPollingStrategy(
+                Utils.GSON.fromJson("{\"sync_polling_strategy\": \"search\"}", Input.Params.class)))
+        .isEqualTo("search");
+    Input.Params typo =
+        Utils.GSON.fromJson("{\"sync_polling_strategy\": \"serach\"}", Input.Params.class);
+    assertThatThrownBy(() -> syncPollingStrategy(typo))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("serach");
+  }
+
+  @Test
+  void alreadyPublishedShouldKeepOnlySynchronizedPackagesWithSameContent(@TempDir Path directory)
+      throws Exception {
+    List<String> files = new ArrayList<>();
+    for (String name : asList("a.deb", "b.deb", "c.deb", "d.deb")) {
+      files.add(Files.writeString(directory.resolve(name), name).toString());
+    }
+    List<Package> published =
+        asList(
+            published("a.deb", "other content", true, false, "1.0"),
+            published("a.deb", "a.deb", true, false, "2.0"),
+            published("b.deb", "b.deb", false, false, "2.0"),
+            published("c.deb", "c.deb", false, true, "2.0"),
+            published("d.deb", "d.deb", true, false, "2.0"));
+    // another size: not a candidate, whatever the checksum
+    published.get(4).setSize(1);
+
+    assertThat(CloudsmithLogic.alreadyPublished(published, files, null, 2))
+        .extracting(Package::filename, Package::version)
+        .containsExactly(tuple("a.deb", "2.0"));
+  }
+
+  static Package published(
+      String filename, String content, boolean syncCompleted, boolean syncFailed, String version)
+      throws NoSuchAlgorithmException {
+    Package p = p(filename, content);
+    p.setVersion(version);
+    p.setIs_sync_completed(syncCompleted);
+    p.setIs_sync_failed(syncFailed);
+    return p;
+  }
 }
@@ -51,6 +51,19 @@ public class CloudsmithGitHubActionTest {
     env.put("INPUT_VERSION_FILTER", "1:23*");
     env.put("INPUT_KEEP_LAST_N", "2");
     env.put("INPUT_KEEP_LAST_MINOR_PATCHES", "true");
+    env.put("INPUT_UPLOAD_CONCURRENCY", "3");
+    env.put("INPUT_MULTIPART_UPLOAD_THRESHOLD", "2048");
+    env.put("INPUT_MULTIPART_CHUNK_SIZE", "50");
+    env.put("INPUT_HASH_CACHE", "/tmp/hashes.json");
+    env.put("INPUT_SYNC_TIMEOUT", "600");
+    env.put("INPUT_SYNC_POLLING_INITIAL_INTERVAL", "2");
+    env.put("INPUT_SYNC_POLLING_MAX_INTERVAL", "30");
+    env.put("INPUT_SYNC_POLLING_STRATEGY", "search");
+    env.put("INPUT_DOWNLOAD_CONCURRENCY", "4");
+    env.put("INPUT_DOWNLOAD_CACHE", "/tmp/cache");
+    env.put("INPUT_DOWNLOAD_CACHE_MAX_SIZE", "2048");
+    env.put("INPUT_SEGMENTED_DOWNLOAD_THRESHOLD", "512");
+    env.put("INPUT_DOWNLOAD_SEGMENTS", "8");
 
     Input.Params params =
         CloudsmithGitHubAction.mapParams(
@@ -64,5 +77,18 @@ public class CloudsmithGitHubActionTest {
     assertThat(params.versionFilter()).isEqualTo("1:23*");
     assertThat(params.keepLastN()).isEqualTo(2);
     assertThat(params.keepLastMinorPatches()).isTrue();
+    assertThat(params.uploadConcurrency()).isEqualTo(3);
+    assertThat(params.multipartUploadThreshold()).isEqualTo(2048);
+    assertThat(params.multipartChunkSize()).isEqualTo(50);
+    assertThat(params.hashCache()).isEqualTo("/tmp/hashes.json");
+    assertThat(params.syncTimeout()).isEqualTo(600);
+    assertThat(params.syncPollingInitialInterval()).isEqualTo(2);
+    assertThat(params.syncPollingMaxInterval()).isEqualTo(30);
+    assertThat(params.syncPollingStrategy()).isEqualTo("search");
+    assertThat(params.downloadConcurrency()).isEqualTo(4);
+    assertThat(params.downloadCache()).isEqualTo("/tmp/cache");
+    assertThat(params.downloadCacheMaxSize()).isEqualTo(2048);
+    assertThat(params.segmentedDownloadThreshold()).isEqualTo(512);
+    assertThat(params.downloadSegments()).isEqualTo(8);
   }
 }
@@ -0,0 +1,92 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import static com.rabbitmq.ci.ConcurrencyUtils.invokeAll;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.rabbitmq.ci.ConcurrencyUtils.ConcurrencyException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyUtilsTest {
+
+  @Test
+  void resultsShouldBeInTaskOrder() throws Exception {
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      int value = i;
+      tasks.add(
+          () -> {
+            Thread.sleep((10 - value) * 10L);
+            return value;
+          });
+    }
+    assertThat(invokeAll(tasks, 4)).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+  }
+
+  @Test
+  void concurrencyShouldBeBounded() throws Exception {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    List<Callable<Void>> tasks =
+        Collections.nCopies(
+            20,
+            () -> {
+              maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+              Thread.sleep(10);
+              inFlight.decrementAndGet();
+              return null;
+            });
+    invokeAll(tasks, 3);
+    assertThat(maxInFlight.get()).isLessThanOrEqualTo(3);
+  }
+
+  @Test
+  void failureShouldBePropagated() {
+    List<Callable<String>> tasks =
+        List.of(
+            () -> "ok",
+            () -> {
+              throw new IllegalStateException("boom");
+            });
+    assertThatThrownBy(() -> invokeAll(tasks, 2))
+        .isInstanceOf(ConcurrencyException.class)
+        .hasCauseInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void failureShouldNotWaitForEarlierTasks() {
+    CountDownLatch release = new CountDownLatch(1);
+    List<Callable<String>> tasks =
+        List.of(
+            () -> {
+              release.await();
+              return "ok";
+            },
+            () -> {
+              throw new IllegalStateException("boom");
+            });
+    try {
+      assertTimeoutPreemptively(
+          Duration.ofSeconds(10),
+          () ->
+              assertThatThrownBy(() -> invokeAll(tasks, 2))
+                  .isInstanceOf(ConcurrencyException.class)
+                  .hasCauseInstanceOf(IllegalStateException.class));
+    } finally {
+      release.countDown();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DownloadCacheTest {
+
+  @TempDir Path directory;
+
+  static String sha256(String content) throws Exception {
+    return CloudsmithPackageAccess.sha256(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void retrieveShouldReturnStoredFile() throws Exception {
+    DownloadCache cache = new DownloadCache(directory.resolve("cache"), 1024);
+    Path destination = directory.resolve("package.deb");
+    String sha256 = sha256("content");
+    assertThat(cache.retrieve(sha256, 7, destination)).isFalse();
+    assertThat(destination).doesNotExist();
+
+    Path downloaded = Files.writeString(directory.resolve("downloaded.deb"), "content");
+    cache.store(sha256, downloaded);
+
+    assertThat(cache.retrieve(sha256, 7, destination)).isTrue();
+    assertThat(destination).hasContent("content");
+  }
+
+  @Test
+  void retrieveShouldEvictModifiedFile() throws Exception {
+    Path cacheDirectory = directory.resolve("cache");
+    DownloadCache cache = new DownloadCache(cacheDirectory, 1024);
+    String sha256 = sha256("content");
+    cache.store(sha256, Files.writeString(directory.resolve("downloaded.deb"), "content"));
+    Path destination = directory.resolve("package.deb");
+    assertThat(cache.retrieve(sha256, 7, destination)).isTrue();
+
+    // e.g. a build step edits the retrieved file, which can be a hard link to the entry
+    Files.writeString(cacheDirectory.resolve(sha256), "CONTENT");
+
+    Path otherDestination = directory.resolve("other.deb");
+    assertThat(cache.retrieve(sha256, 7, otherDestination)).isFalse();
+    assertThat(otherDestination).doesNotExist();
+    assertThat(cacheDirectory.resolve(sha256)).doesNotExist();
+  }
+
+  @Test
+  void storeShouldEvictLeastRecentlyUsedFiles() throws Exception {
+    Path cacheDirectory = directory.resolve("cache");
+    DownloadCache cache = new DownloadCache(cacheDirectory, 20);
+    String a = sha256("aaaaaaaaaa");
+    String b = sha256("bbbbbbbbbb");
+    String c = sha256("cccccccccc");
+
+    cache.store(a, Files.writeString(directory.resolve("a"), "aaaaaaaaaa"));
+    Files.setLastModifiedTime(cacheDirectory.resolve(a), FileTime.fromMillis(1000));
+    cache.store(b, Files.writeString(directory.resolve("b"), "bbbbbbbbbb"));
+    Files.setLastModifiedTime(cacheDirectory.resolve(b), FileTime.fromMillis(2000));
+    // "a" becomes the most recently used
+    assertThat(cache.retrieve(a, 10, directory.resolve("retrieved"))).isTrue();
+
+    cache.store(c, Files.writeString(directory.resolve("c"), "cccccccccc"));
+
+    assertThat(cacheDirectory.resolve(a)).exists();
+    assertThat(cacheDirectory.resolve(b)).doesNotExist();
+    assertThat(cacheDirectory.resolve(c)).exists();
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HashCacheTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void sha256ShouldBeReadFromCacheWhenFileDidNotChange() throws Exception {
+    Path cacheFile = directory.resolve("cache").resolve("hashes.json");
+    Path file = Files.writeString(directory.resolve("package.deb"), "content");
+    FileTime mtime = Files.getLastModifiedTime(file);
+    String sha256 = CloudsmithPackageAccess.sha256("content".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(new HashCache(cacheFile).sha256(file)).isEqualTo(sha256);
+    assertThat(Files.readString(cacheFile)).contains(sha256);
+
+    // same size and modification time: the cached value is used by a new instance
+    Files.writeString(file, "CONTENT");
+    Files.setLastModifiedTime(file, mtime);
+    assertThat(new HashCache(cacheFile).sha256(file)).isEqualTo(sha256);
+
+    // modified file: hashed again, and the stale entry replaced
+    Files.setLastModifiedTime(file, FileTime.fromMillis(mtime.toMillis() + 1000));
+    String newSha256 = CloudsmithPackageAccess.sha256("CONTENT".getBytes(StandardCharsets.UTF_8));
+    assertThat(new HashCache(cacheFile).sha256(file)).isEqualTo(newSha256);
+    assertThat(Files.readString(cacheFile)).contains(newSha256).doesNotContain(sha256);
+  }
+}
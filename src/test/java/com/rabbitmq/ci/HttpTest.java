@@ -6,23 +6,51 @@
 package com.rabbitmq.ci;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.binaryEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.IntFunction;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class HttpTest {
 
@@ -106,6 +134,858 @@ public class HttpTest {
     assertThat(packages).hasSize(3);
   }
 
+  @Test
+  void paginationWithPageTotalHeaderShouldFetchPagesConcurrently() throws Exception {
+    String in =
+        "{\n"
+            + "  \"source\": {\n"
+            + "    \"username\": \"team-rabbitmq\",\n"
+            + "    \"organization\": \"rabbitmq\",\n"
+            + "    \"repository\": \"rabbitmq-erlang\",\n"
+            + "    \"api_key\": \"the api key\",\n"
+            + "    \"name\": \"^erlang*\"\n"
+            + "  }\n"
+            + "}";
+    IntFunction<String> response = page -> "[{\"filename\": \"package-" + page + ".deb\"}]";
+    Input input = Utils.GSON.fromJson(in, Input.class);
+    stubFor(
+        get(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("page", absent())
+            .willReturn(
+                aResponse()
+                    .withBody(response.apply(1))
+                    .withHeader(CloudsmithPackageAccess.PAGINATION_PAGE_TOTAL_HEADER, "4")));
+    for (int page = 2; page <= 4; page++) {
+      stubFor(
+          get(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+              .withQueryParam("page", equalTo(String.valueOf(page)))
+              .willReturn(
+                  aResponse()
+                      .withBody(response.apply(page))
+                      .withFixedDelay((5 - page) * 100)
+                      .withHeader(CloudsmithPackageAccess.PAGINATION_PAGE_TOTAL_HEADER, "4")));
+    }
+    CloudsmithPackageAccess access = access(input);
+    List<Package> packages = access.find();
+    assertThat(packages)
+        .extracting(Package::filename)
+        .containsExactly("package-1.deb", "package-2.deb", "package-3.deb", "package-4.deb");
+    verify(exactly(4), getRequestedFor(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/")));
+  }
+
+  @Test
+  void streamShouldStopFetchingPagesWhenShortCircuited() throws Exception {
+    String in =
+        "{\n"
+            + "  \"source\": {\n"
+            + "    \"username\": \"team-rabbitmq\",\n"
+            + "    \"organization\": \"rabbitmq\",\n"
+            + "    \"repository\": \"rabbitmq-erlang\",\n"
+            + "    \"api_key\": \"the api key\"\n"
+            + "  }\n"
+            + "}";
+    IntFunction<String> response = page -> "[{\"filename\": \"package-" + page + ".deb\"}]";
+    IntFunction<String> nextHeader =
+        page ->
+            "<" + baseUrl() + "/packages/rabbitmq/rabbitmq-erlang/page-" + page + ">; rel=\"next\"";
+    Input input = Utils.GSON.fromJson(in, Input.class);
+    stubFor(
+        get(urlEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .willReturn(
+                aResponse().withBody(response.apply(1)).withHeader("Link", nextHeader.apply(2))));
+    stubFor(
+        get(urlEqualTo("/packages/rabbitmq/rabbitmq-erlang/page-2"))
+            .willReturn(
+                aResponse().withBody(response.apply(2)).withHeader("Link", nextHeader.apply(3))));
+    stubFor(
+        get(urlEqualTo("/packages/rabbitmq/rabbitmq-erlang/page-3"))
+            .willReturn(aResponse().withBody(response.apply(3))));
+    CloudsmithPackageAccess access = access(input);
+    assertThat(access.stream().map(Package::filename))
+        .containsExactly("package-1.deb", "package-2.deb", "package-3.deb");
+
+    wireMockServer.resetRequests();
+    assertThat(access.stream().limit(1).map(Package::filename)).containsExactly("package-1.deb");
+    verify(exactly(0), getRequestedFor(urlEqualTo("/packages/rabbitmq/rabbitmq-erlang/page-3")));
+  }
+
+  @Test
+  void searchCacheShouldReuseCachedPageWhenNotModified(@TempDir Path cacheDirectory)
+      throws Exception {
+    String in =
+        "{\n"
+            + "  \"source\": {\n"
+            + "    \"username\": \"team-rabbitmq\",\n"
+            + "    \"organization\": \"rabbitmq\",\n"
+            + "    \"repository\": \"rabbitmq-erlang\",\n"
+            + "    \"api_key\": \"the api key\",\n"
+            + "    \"search_cache\": \""
+            + cacheDirectory.toString().replace("\\", "\\\\")
+            + "\"\n"
+            + "  }\n"
+            + "}";
+    Input input = Utils.GSON.fromJson(in, Input.class);
+    stubFor(
+        get(urlEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .willReturn(
+                aResponse()
+                    .withBody("[{\"filename\": \"some-package.deb\"}]")
+                    .withHeader("ETag", "\"v1\"")));
+    stubFor(
+        get(urlEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withHeader("If-None-Match", equalTo("\"v1\""))
+            .willReturn(aResponse().withStatus(304)));
+
+    assertThat(access(input).find())
+        .extracting(Package::filename)
+        .containsExactly("some-package.deb");
+    assertThat(access(input).find())
+        .extracting(Package::filename)
+        .containsExactly("some-package.deb");
+    verify(
+        exactly(1),
+        getRequestedFor(urlEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withHeader("If-None-Match", equalTo("\"v1\"")));
+  }
+
+  @Test
+  void findShouldAddUploadDateCriteriaWhenSet() throws Exception {
+    String in =
+        "{\n"
+            + "  \"source\": {\n"
+            + "    \"username\": \"team-rabbitmq\",\n"
+            + "    \"organization\": \"rabbitmq\",\n"
+            + "    \"repository\": \"rabbitmq-erlang\",\n"
+            + "    \"api_key\": \"the api key\",\n"
+            + "    \"name\": \"^erlang$\"\n"
+            + "  }\n"
+            + "}";
+    Input input = Utils.GSON.fromJson(in, Input.class);
+    stubFor(get(urlPathMatching("/packages/.*")).willReturn(aResponse().withBody("[]")));
+    access(input)
+        .find(
+            new CloudsmithPackageAccess.Search()
+                .uploadedSince(ZonedDateTime.parse("2021-03-19T23:58:06.413956-02:00")));
+    verify(
+        exactly(1),
+        getRequestedFor(
+            urlEqualTo(
+                "/packages/rabbitmq/rabbitmq-erlang/?query=filename%3A%5Eerlang%24+AND+uploaded%3A%3E%3D2021-03-20")));
+  }
+
+  @Test
+  void incrementalCheckShouldKeepCursorOfCurrentVersion() throws Exception {
+    Input input = incrementalCheckInput("2021-03-19T12:58:06.413956Z");
+    stubFor(
+        get(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "["
+                            + uploadedPackage("erlang-1.0.deb", "1.0", "2021-03-20T08:00:00Z")
+                            + ", "
+                            + uploadedPackage("erlang-1.1.deb", "1.1", "2021-03-21T09:30:00Z")
+                            + "]")));
+    List<String> out = new CopyOnWriteArrayList<>();
+
+    new CloudsmithLogic(input, outLog(out)).check(access(input));
+
+    verify(
+        getRequestedFor(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("query", containing("uploaded:>=2021-03-19")));
+    // the current version is emitted as it came in, so that Concourse recognizes it
+    assertThat(out)
+        .containsExactly(
+            "[{\"version\":\"1.0\",\"uploaded_at\":\"2021-03-19T12:58:06.413956Z\"},"
+                + "{\"version\":\"1.1\",\"uploaded_at\":\"2021-03-21T09:30:00Z\"}]");
+  }
+
+  @Test
+  void incrementalCheckShouldListEverythingWhenCursorIsInvalid() throws Exception {
+    Input input = incrementalCheckInput("not a date");
+    stubFor(
+        get(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "["
+                            + uploadedPackage("erlang-0.9.deb", "0.9", "2021-03-18T08:00:00Z")
+                            + ", "
+                            + uploadedPackage("erlang-1.0.deb", "1.0", "2021-03-20T08:00:00Z")
+                            + "]")));
+    List<String> out = new CopyOnWriteArrayList<>();
+
+    new CloudsmithLogic(input, outLog(out)).check(access(input));
+
+    verify(
+        exactly(0),
+        getRequestedFor(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("query", containing("uploaded")));
+    // the invalid cursor is not emitted again, the version gets the one from the listing
+    assertThat(out)
+        .containsExactly("[{\"version\":\"1.0\",\"uploaded_at\":\"2021-03-20T08:00:00Z\"}]");
+  }
+
+  @Test
+  void checkShouldStopPagingOncePastCurrentVersion() throws Exception {
+    String in =
+        "{\n"
+            + "  \"source\": {\n"
+            + "    \"username\": \"team-rabbitmq\",\n"
+            + "    \"organization\": \"rabbitmq\",\n"
+            + "    \"repository\": \"rabbitmq-erlang\",\n"
+            + "    \"api_key\": \"the api key\"\n"
+            + "  },\n"
+            + "  \"version\": { \"version\": \"1:1.1\" }\n"
+            + "}";
+    Input input = Utils.GSON.fromJson(in, Input.class);
+    String[][] pages = {{"1:1.3", "1:1.2"}, {"1:1.1", "1:1.0"}, {"1:0.9"}, {"1:0.8"}};
+    for (int i = 0; i < pages.length; i++) {
+      StringBuilder body = new StringBuilder("[");
+      for (String version : pages[i]) {
+        body.append(body.length() > 1 ? ", " : "")
+            .append(searchResult("erlang-" + version + ".deb", version, true, version));
+      }
+      body.append("]");
+      String url = "/packages/rabbitmq/rabbitmq-erlang/" + (i == 0 ? "" : "page-" + (i + 1) + "/");
+      ResponseDefinitionBuilder response = aResponse().withBody(body.toString());
+      if (i < pages.length - 1) {
+        response.withHeader(
+            "Link",
+            "<"
+                + baseUrl()
+                + "/packages/rabbitmq/rabbitmq-erlang/page-"
+                + (i + 2)
+                + "/>; "
+                + "rel=\"next\"");
+      }
+      stubFor(get(urlPathEqualTo(url)).willReturn(response));
+    }
+    List<String> out = new CopyOnWriteArrayList<>();
+
+    new CloudsmithLogic(input, outLog(out)).check(access(input));
+
+    assertThat(out)
+        .containsExactly(
+            "[{\"version\":\"1:1.1\"},{\"version\":\"1:1.2\"},{\"version\":\"1:1.3\"}]");
+    verify(
+        getRequestedFor(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("sort", equalTo("-version")));
+    // the page after the stop may have been prefetched, not the following ones
+    verify(
+        exactly(0), getRequestedFor(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/page-4/")));
+  }
+
+  static Input incrementalCheckInput(String cursor) {
+    String in =
+        "{\n"
+            + "  \"source\": {\n"
+            + "    \"username\": \"team-rabbitmq\",\n"
+            + "    \"organization\": \"rabbitmq\",\n"
+            + "    \"repository\": \"rabbitmq-erlang\",\n"
+            + "    \"api_key\": \"the api key\",\n"
+            + "    \"name\": \"^erlang\",\n"
+            + "    \"incremental_check\": true\n"
+            + "  },\n"
+            + "  \"version\": {\n"
+            + "    \"version\": \"1.0\",\n"
+            + "    \"uploaded_at\": \""
+            + cursor
+            + "\"\n"
+            + "  }\n"
+            + "}";
+    return Utils.GSON.fromJson(in, Input.class);
+  }
+
+  static String uploadedPackage(String filename, String version, String uploadedAt) {
+    return String.format(
+        "{\"filename\": \"%s\", \"version\": \"%s\", \"is_sync_completed\": true, "
+            + "\"uploaded_at\": \"%s\"}",
+        filename, version, uploadedAt);
+  }
+
+  static Log outLog(List<String> out) {
+    return new Log.GitHubActionsLog() {
+      @Override
+      public void out(String message) {
+        out.add(message);
+      }
+    };
+  }
+
+  @Test
+  void findShouldSearchAllRepositoriesAndDistributions() throws Exception {
+    String in =
+        "{\n"
+            + "  \"source\": {\n"
+            + "    \"username\": \"team-rabbitmq\",\n"
+            + "    \"organization\": \"rabbitmq\",\n"
+            + "    \"repository\": \"erlang-1, erlang-2\",\n"
+            + "    \"api_key\": \"the api key\",\n"
+            + "    \"distribution\": \"debian/bookworm,ubuntu/jammy\"\n"
+            + "  }\n"
+            + "}";
+    Input input = Utils.GSON.fromJson(in, Input.class);
+    for (String repository : List.of("erlang-1", "erlang-2")) {
+      for (String codename : List.of("bookworm", "jammy")) {
+        stubFor(
+            get(urlPathEqualTo("/packages/rabbitmq/" + repository + "/"))
+                .withQueryParam("query", containing("distribution:" + codename))
+                .willReturn(
+                    aResponse()
+                        .withBody(
+                            "[{\"filename\": \"erlang.deb\", \"self_url\": \""
+                                + repository
+                                + "/"
+                                + codename
+                                + "\"},"
+                                + "{\"filename\": \"erlang.deb\", \"self_url\": \"shared\"}]")));
+      }
+    }
+    List<Package> packages = access(input).find();
+    assertThat(packages)
+        .extracting(Package::selfUrl)
+        .containsExactly(
+            "erlang-1/bookworm", "shared", "erlang-1/jammy", "erlang-2/bookworm", "erlang-2/jammy");
+    assertThat(packages)
+        .extracting(Package::origin)
+        .containsExactly(
+            "erlang-1/debian/bookworm",
+            "erlang-1/debian/bookworm",
+            "erlang-1/ubuntu/jammy",
+            "erlang-2/debian/bookworm",
+            "erlang-2/ubuntu/jammy");
+    verify(exactly(4), getRequestedFor(urlPathMatching("/packages/rabbitmq/.*")));
+  }
+
+  @Test
+  void downloadShouldStreamToFileAndComputeChecksum(@TempDir Path directory) throws Exception {
+    byte[] content = new byte[1024 * 1024];
+    new Random().nextBytes(content);
+    stubFor(get(urlEqualTo("/dl/package.deb")).willReturn(aResponse().withBody(content)));
+    stubFor(get(urlEqualTo("/dl/missing.deb")).willReturn(aResponse().withStatus(404)));
+    CloudsmithPackageAccess access = access(simpleInput());
+
+    Path destination = directory.resolve("package.deb");
+    String checksum = access.download(baseUrl() + "/dl/package.deb", destination, content.length);
+    assertThat(checksum).isEqualTo(CloudsmithPackageAccess.sha256(content));
+    assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+
+    assertThatThrownBy(
+            () ->
+                access.download(
+                    baseUrl() + "/dl/missing.deb",
+                    directory.resolve("missing.deb"),
+                    content.length))
+        .isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void downloadShouldResumeInterruptedTransferWithRangeRequest(@TempDir Path directory)
+      throws Exception {
+    byte[] content = new byte[1024 * 1024];
+    new Random().nextBytes(content);
+    int received = content.length / 3;
+    // left by a previous run, must not be resumed
+    Files.write(directory.resolve("package.deb.part"), new byte[received / 2]);
+    // WireMock cannot close a connection in the middle of a valid body
+    List<String> ranges = new CopyOnWriteArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/dl/package.deb",
+        exchange -> {
+          String range = exchange.getRequestHeaders().getFirst("Range");
+          ranges.add(String.valueOf(range));
+          if (range == null) {
+            // announces the whole file, but stops after a third
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content, 0, received);
+            exchange.getResponseBody().flush();
+            exchange.close();
+          } else {
+            // the client may not have got all the bytes sent before the connection was closed
+            int offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.sendResponseHeaders(206, content.length - offset);
+            exchange.getResponseBody().write(content, offset, content.length - offset);
+            exchange.close();
+          }
+        });
+    server.start();
+    try {
+      CloudsmithPackageAccess access = access(simpleInput());
+
+      Path destination = directory.resolve("package.deb");
+      String checksum =
+          access.download(
+              "http://localhost:" + server.getAddress().getPort() + "/dl/package.deb",
+              destination,
+              content.length);
+      assertThat(checksum).isEqualTo(CloudsmithPackageAccess.sha256(content));
+      assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+      assertThat(directory.resolve("package.deb.part")).doesNotExist();
+      assertThat(ranges).hasSize(2).first().isEqualTo("null");
+      assertThat(ranges.get(1)).matches("bytes=[1-9][0-9]*-");
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void downloadShouldUseRangeRequestsForLargeFiles(@TempDir Path directory) throws Exception {
+    int mb = 1024 * 1024;
+    byte[] content = new byte[3 * mb];
+    new Random().nextBytes(content);
+    for (int i = 0; i < 3; i++) {
+      stubFor(
+          get(urlEqualTo("/dl/large.tar.gz"))
+              .withHeader("Range", equalTo("bytes=" + (i * mb) + "-" + ((i + 1) * mb - 1)))
+              .willReturn(
+                  aResponse()
+                      .withStatus(206)
+                      .withBody(Arrays.copyOfRange(content, i * mb, (i + 1) * mb))));
+    }
+    Input input = simpleInput("{\"segmented_download_threshold\": 1, \"download_segments\": 3}");
+    CloudsmithPackageAccess access = access(input);
+
+    Path destination = directory.resolve("large.tar.gz");
+    String checksum = access.download(baseUrl() + "/dl/large.tar.gz", destination, content.length);
+    assertThat(checksum).isEqualTo(CloudsmithPackageAccess.sha256(content));
+    assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+    verify(3, getRequestedFor(urlEqualTo("/dl/large.tar.gz")));
+  }
+
+  @Test
+  void downloadShouldNotWritePastTheRequestedRange(@TempDir Path directory) throws Exception {
+    int mb = 1024 * 1024;
+    byte[] content = new byte[2 * mb];
+    new Random().nextBytes(content);
+    String firstRange = "bytes=0-" + (mb - 1);
+    stubFor(
+        get(urlEqualTo("/dl/large.tar.gz"))
+            .inScenario("overrun")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .withHeader("Range", equalTo(firstRange))
+            // the server ignores the end of the range
+            .willReturn(aResponse().withStatus(206).withBody(new byte[2 * mb]))
+            .willSetStateTo("retried"));
+    stubFor(
+        get(urlEqualTo("/dl/large.tar.gz"))
+            .inScenario("overrun")
+            .whenScenarioStateIs("retried")
+            .withHeader("Range", equalTo(firstRange))
+            .willReturn(aResponse().withStatus(206).withBody(Arrays.copyOf(content, mb))));
+    stubFor(
+        get(urlEqualTo("/dl/large.tar.gz"))
+            .withHeader("Range", equalTo("bytes=" + mb + "-" + (2 * mb - 1)))
+            .willReturn(
+                aResponse().withStatus(206).withBody(Arrays.copyOfRange(content, mb, 2 * mb))));
+    Input input = simpleInput("{\"segmented_download_threshold\": 1, \"download_segments\": 2}");
+    CloudsmithPackageAccess access = access(input);
+
+    Path destination = directory.resolve("large.tar.gz");
+    String checksum = access.download(baseUrl() + "/dl/large.tar.gz", destination, content.length);
+    assertThat(checksum).isEqualTo(CloudsmithPackageAccess.sha256(content));
+    assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+    verify(
+        2,
+        getRequestedFor(urlEqualTo("/dl/large.tar.gz")).withHeader("Range", equalTo(firstRange)));
+  }
+
+  @Test
+  void uploadShouldStreamFileWithChecksum(@TempDir Path directory) throws Exception {
+    byte[] content = new byte[1024 * 1024];
+    new Random().nextBytes(content);
+    Path file = Files.write(directory.resolve("package.tar.gz"), content);
+    stubFor(
+        put(urlEqualTo("/rabbitmq/rabbitmq-erlang/package.tar.gz"))
+            .withHeader("Content-Sha256", equalTo(CloudsmithPackageAccess.sha256(content)))
+            .withRequestBody(binaryEqualTo(content))
+            .willReturn(aResponse().withBody("{\"identifier\": \"abc\"}")));
+    CloudsmithPackageAccess access = access(simpleInput());
+
+    String identifier = access.uploadFile(file, CloudsmithPackageAccess.sha256(content));
+    assertThat(identifier).isEqualTo("abc");
+    verify(1, putRequestedFor(urlEqualTo("/rabbitmq/rabbitmq-erlang/package.tar.gz")));
+  }
+
+  @Test
+  void uploadShouldExpectContinueAndFailOnErrorResponse(@TempDir Path directory) throws Exception {
+    Path file = Files.write(directory.resolve("package.tar.gz"), new byte[1024 * 1024]);
+    // WireMock handles "Expect: 100-continue" itself and does not expose the header
+    List<String> expectHeaders = new CopyOnWriteArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/rabbitmq/rabbitmq-erlang/package.tar.gz",
+        exchange -> {
+          expectHeaders.add(String.valueOf(exchange.getRequestHeaders().getFirst("Expect")));
+          exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+          byte[] body = "{\"detail\": \"Invalid API key\"}".getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(401, body.length);
+          exchange.getResponseBody().write(body);
+          exchange.close();
+        });
+    server.start();
+    try {
+      String serverUrl = "http://localhost:" + server.getAddress().getPort();
+      CloudsmithPackageAccess access =
+          new CloudsmithPackageAccess(
+              simpleInput(), serverUrl, baseUrl(), baseUrl(), new Log.GitHubActionsLog());
+
+      assertThatThrownBy(() -> access.uploadFile(file, "abc"))
+          .isInstanceOf(CloudsmithPackageAccess.HttpStatusException.class)
+          .hasMessageContaining("401");
+      assertThat(expectHeaders).singleElement().asString().isEqualToIgnoringCase("100-continue");
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void uploadFileShouldAbortMultipartUploadWhenPartFails(@TempDir Path directory) throws Exception {
+    int mb = 1024 * 1024;
+    Path file = Files.write(directory.resolve("large.tar.gz"), new byte[2 * mb]);
+    stubFor(
+        post(urlEqualTo("/v1/files/rabbitmq/rabbitmq-erlang/"))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "{\"identifier\": \"up-1\", \"upload_url\": \""
+                            + baseUrl()
+                            + "/rabbitmq/rabbitmq-erlang/large.tar.gz\"}")));
+    stubFor(
+        put(urlPathEqualTo("/rabbitmq/rabbitmq-erlang/large.tar.gz"))
+            .withQueryParam("part_number", equalTo("1"))
+            .willReturn(aResponse().withStatus(200)));
+    stubFor(
+        put(urlPathEqualTo("/rabbitmq/rabbitmq-erlang/large.tar.gz"))
+            .withQueryParam("part_number", equalTo("2"))
+            .willReturn(aResponse().withStatus(400)));
+    stubFor(
+        post(urlEqualTo("/v1/files/rabbitmq/rabbitmq-erlang/up-1/abort/"))
+            .willReturn(aResponse().withStatus(204)));
+    CloudsmithPackageAccess access =
+        access(simpleInput("{\"multipart_upload_threshold\": 1, \"multipart_chunk_size\": 1}"));
+
+    assertThatThrownBy(() -> access.uploadFile(file, "abc"))
+        .hasRootCauseInstanceOf(CloudsmithPackageAccess.HttpStatusException.class);
+    // one session, the failed part is not retried on a client error, and the session is aborted
+    verify(1, postRequestedFor(urlEqualTo("/v1/files/rabbitmq/rabbitmq-erlang/")));
+    verify(
+        1,
+        putRequestedFor(urlPathEqualTo("/rabbitmq/rabbitmq-erlang/large.tar.gz"))
+            .withQueryParam("part_number", equalTo("2")));
+    verify(0, postRequestedFor(urlEqualTo("/v1/files/rabbitmq/rabbitmq-erlang/up-1/complete/")));
+    verify(1, postRequestedFor(urlEqualTo("/v1/files/rabbitmq/rabbitmq-erlang/up-1/abort/")));
+  }
+
+  @Test
+  void uploadPipelineShouldUploadAndCreateAllFiles(@TempDir Path directory) throws Exception {
+    List<String> files = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      String filename = "package-" + i + ".deb";
+      files.add(Files.writeString(directory.resolve(filename), filename).toString());
+      stubFor(
+          put(urlEqualTo("/rabbitmq/rabbitmq-erlang/" + filename))
+              .willReturn(aResponse().withBody("{\"identifier\": \"id-" + i + "\"}")));
+      stubFor(
+          post(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/upload/deb/"))
+              .withRequestBody(containing("\"package_file\":\"id-" + i + "\""))
+              .willReturn(aResponse().withBody("{\"self_url\": \"http://localhost/" + i + "\"}")));
+    }
+    UploadPipeline pipeline =
+        new UploadPipeline(access(simpleInput()), null, new LinkedHashMap<>(), "deb", 2, 3);
+
+    List<UploadPipeline.Upload> uploads = pipeline.run(files);
+
+    assertThat(uploads).extracting(UploadPipeline.Upload::file).isEqualTo(files);
+    assertThat(uploads).extracting(UploadPipeline.Upload::error).containsOnlyNulls();
+    assertThat(uploads)
+        .extracting(u -> u.created().selfUrl())
+        .containsExactly(
+            "http://localhost/0",
+            "http://localhost/1",
+            "http://localhost/2",
+            "http://localhost/3",
+            "http://localhost/4");
+  }
+
+  @Test
+  void uploadPipelineShouldNotRetryClientErrors(@TempDir Path directory) throws Exception {
+    String file = Files.writeString(directory.resolve("package.deb"), "content").toString();
+    stubFor(
+        put(urlEqualTo("/rabbitmq/rabbitmq-erlang/package.deb"))
+            .willReturn(aResponse().withBody("{\"identifier\": \"id\"}")));
+    stubFor(
+        post(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/upload/deb/"))
+            .willReturn(aResponse().withStatus(401).withBody("{\"detail\": \"Unauthorized\"}")));
+    UploadPipeline pipeline =
+        new UploadPipeline(access(simpleInput()), null, new LinkedHashMap<>(), "deb", 1, 1);
+
+    List<UploadPipeline.Upload> uploads = pipeline.run(List.of(file));
+
+    assertThat(uploads.get(0).error())
+        .isInstanceOf(CloudsmithPackageAccess.HttpStatusException.class)
+        .hasMessageContaining("401");
+    verify(1, postRequestedFor(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/upload/deb/")));
+  }
+
+  @Test
+  void findByFilenamesShouldLookUpAllFilenamesInOneQuery() throws Exception {
+    stubFor(
+        get(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam(
+                "query",
+                equalTo("(filename:^erlang_26\\.2\\.deb$ OR filename:^erlang\\+doc\\.deb$)"))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "[{\"filename\": \"erlang_26.2.deb\", \"checksum_sha256\": \"abc\"}]")));
+    CloudsmithPackageAccess access =
+        access(simpleInput("{ \"version\": \"erlang_(.*)\\\\.deb\" }"));
+
+    List<Package> packages = access.findByFilenames(List.of("erlang_26.2.deb", "erlang+doc.deb"));
+
+    assertThat(packages).extracting(Package::filename).containsExactly("erlang_26.2.deb");
+  }
+
+  @Test
+  void findBySelfUrlsShouldMatchPackagesByIdentifierInOneQuery() throws Exception {
+    stubFor(
+        get(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("query", equalTo("(filename:^a\\.deb$ OR filename:^b\\.deb$)"))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "["
+                            + searchResult("a.deb", "AaAaAaAa", true, "1.0")
+                            + ", "
+                            + searchResult("b.deb", "BbBbBbBb", false, "1.0")
+                            + "]")));
+    CloudsmithPackageAccess access = access(simpleInput("{}"));
+    Map<String, String> filenamesBySelfUrl = new LinkedHashMap<>();
+    filenamesBySelfUrl.put(createdSelfUrl("AaAaAaAa"), "a.deb");
+    filenamesBySelfUrl.put(createdSelfUrl("BbBbBbBb"), "b.deb");
+
+    Map<String, Package> packages = access.findBySelfUrls(filenamesBySelfUrl);
+
+    assertThat(packages).containsOnlyKeys(filenamesBySelfUrl.keySet());
+    assertThat(packages.get(createdSelfUrl("AaAaAaAa")).filename()).isEqualTo("a.deb");
+    assertThat(packages.get(createdSelfUrl("BbBbBbBb")).filename()).isEqualTo("b.deb");
+    verify(1, getRequestedFor(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/")));
+  }
+
+  @Test
+  void waitForSynchronizationShouldPollStatusAndFetchPackageOnce() throws Exception {
+    String packageUrl = baseUrl() + "/v1/packages/rabbitmq/rabbitmq-erlang/abc/";
+    stubFor(
+        get(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/abc/status/"))
+            .inScenario("sync")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse().withBody("{\"is_sync_completed\": false}"))
+            .willSetStateTo("completed"));
+    stubFor(
+        get(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/abc/status/"))
+            .inScenario("sync")
+            .whenScenarioStateIs("completed")
+            .willReturn(aResponse().withBody("{\"is_sync_completed\": true}")));
+    stubFor(
+        get(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/abc/"))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "{\"filename\": \"a.deb\", \"version\": \"1.0\", "
+                            + "\"is_sync_completed\": true}")));
+    // as returned by the creation request
+    Package created =
+        Utils.GSON.fromJson(
+            "{\"filename\": \"a.deb\", \"self_url\": \""
+                + packageUrl
+                + "\", \"status_url\": \""
+                + packageUrl
+                + "status/\"}",
+            Package.class);
+    Input input = simpleInput("{}");
+    CloudsmithLogic logic = new CloudsmithLogic(input, new Log.GitHubActionsLog());
+    PollingPolicy pollingPolicy =
+        new PollingPolicy(Duration.ofMillis(10), Duration.ofMillis(10), Duration.ofSeconds(10));
+    List<Duration> latencies = new ArrayList<>();
+    long start = System.nanoTime();
+
+    String version =
+        logic.waitForSynchronizationByStatus(
+            access(input),
+            created,
+            pollingPolicy,
+            start,
+            start + pollingPolicy.timeout().toNanos(),
+            latencies);
+
+    assertThat(version).isEqualTo("1.0");
+    assertThat(latencies).hasSize(1);
+    verify(2, getRequestedFor(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/abc/status/")));
+    verify(1, getRequestedFor(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/abc/")));
+  }
+
+  @Test
+  void waitForSynchronizationShouldSearchOnlyPendingPackages() throws Exception {
+    stubFor(
+        get(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("query", equalTo("(filename:^a\\.deb$ OR filename:^b\\.deb$)"))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "["
+                            + searchResult("a.deb", "AaAaAaAa", true, "1.0")
+                            + ", "
+                            + searchResult("b.deb", "BbBbBbBb", false, "1.0")
+                            + "]")));
+    stubFor(
+        get(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("query", equalTo("(filename:^b\\.deb$)"))
+            .willReturn(
+                aResponse().withBody("[" + searchResult("b.deb", "BbBbBbBb", true, "1.0") + "]")));
+    Input input = simpleInput("{}");
+    CloudsmithLogic logic = new CloudsmithLogic(input, new Log.GitHubActionsLog());
+    Map<String, String> filenamesBySelfUrl = new LinkedHashMap<>();
+    filenamesBySelfUrl.put(createdSelfUrl("AaAaAaAa"), "a.deb");
+    filenamesBySelfUrl.put(createdSelfUrl("BbBbBbBb"), "b.deb");
+    PollingPolicy pollingPolicy =
+        new PollingPolicy(Duration.ofMillis(10), Duration.ofMillis(10), Duration.ofSeconds(10));
+    List<Duration> latencies = new ArrayList<>();
+    long start = System.nanoTime();
+
+    String version =
+        logic.waitForSynchronizationBySearch(
+            access(input),
+            filenamesBySelfUrl,
+            pollingPolicy,
+            start,
+            start + pollingPolicy.timeout().toNanos(),
+            latencies);
+
+    assertThat(version).isEqualTo("1.0");
+    assertThat(latencies).hasSize(2);
+    verify(
+        1,
+        getRequestedFor(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("query", containing("a\\.deb")));
+    verify(
+        1,
+        getRequestedFor(urlPathEqualTo("/packages/rabbitmq/rabbitmq-erlang/"))
+            .withQueryParam("query", equalTo("(filename:^b\\.deb$)")));
+  }
+
+  // the host and path of the API used for package creation
+  static String createdSelfUrl(String identifier) {
+    return "https://api-prd.cloudsmith.io/v1/packages/rabbitmq/rabbitmq-erlang/" + identifier + "/";
+  }
+
+  static String searchResult(
+      String filename, String identifier, boolean syncCompleted, String version) {
+    return String.format(
+        "{\"filename\": \"%s\", \"version\": \"%s\", \"is_sync_completed\": %b, "
+            + "\"self_url\": \"https://api.cloudsmith.io/packages/rabbitmq/rabbitmq-erlang/%s/\"}",
+        filename, version, syncCompleted, identifier);
+  }
+
+  @Test
+  void uploadFileShouldUploadLargeFilesInPartsAndRetryFailedParts(@TempDir Path directory)
+      throws Exception {
+    int mb = 1024 * 1024;
+    byte[] content = new byte[2 * mb + mb / 2];
+    new Random().nextBytes(content);
+    Path file = Files.write(directory.resolve("large.tar.gz"), content);
+    String sha256 = CloudsmithPackageAccess.sha256(content);
+    stubFor(
+        post(urlEqualTo("/v1/files/rabbitmq/rabbitmq-erlang/"))
+            .withRequestBody(containing("\"method\":\"put_parts\""))
+            .withRequestBody(containing("\"sha256_checksum\":\"" + sha256 + "\""))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "{\"identifier\": \"up-1\", \"upload_url\": \""
+                            + baseUrl()
+                            + "/rabbitmq/rabbitmq-erlang/large.tar.gz\"}")));
+    for (int part = 1; part <= 3; part++) {
+      byte[] partContent =
+          Arrays.copyOfRange(content, (part - 1) * mb, Math.min(part * mb, content.length));
+      stubFor(
+          put(urlPathEqualTo("/rabbitmq/rabbitmq-erlang/large.tar.gz"))
+              .withQueryParam("upload_id", equalTo("up-1"))
+              .withQueryParam("part_number", equalTo(String.valueOf(part)))
+              .withRequestBody(binaryEqualTo(partContent))
+              .inScenario("part " + part)
+              .whenScenarioStateIs(Scenario.STARTED)
+              .willReturn(aResponse().withStatus(part == 2 ? 503 : 200))
+              .willSetStateTo("retried"));
+      stubFor(
+          put(urlPathEqualTo("/rabbitmq/rabbitmq-erlang/large.tar.gz"))
+              .withQueryParam("part_number", equalTo(String.valueOf(part)))
+              .inScenario("part " + part)
+              .whenScenarioStateIs("retried")
+              .willReturn(aResponse().withStatus(200)));
+    }
+    stubFor(
+        post(urlEqualTo("/v1/files/rabbitmq/rabbitmq-erlang/up-1/complete/"))
+            .withRequestBody(containing("\"upload_id\":\"up-1\""))
+            .willReturn(aResponse().withBody("{\"identifier\": \"up-1\"}")));
+    CloudsmithPackageAccess access =
+        access(simpleInput("{\"multipart_upload_threshold\": 1, \"multipart_chunk_size\": 1}"));
+
+    assertThat(access.uploadFile(file, sha256)).isEqualTo("up-1");
+    verify(
+        1,
+        putRequestedFor(urlPathEqualTo("/rabbitmq/rabbitmq-erlang/large.tar.gz"))
+            .withQueryParam("part_number", equalTo("1")));
+    verify(
+        2,
+        putRequestedFor(urlPathEqualTo("/rabbitmq/rabbitmq-erlang/large.tar.gz"))
+            .withQueryParam("part_number", equalTo("2")));
+    verify(
+        1,
+        putRequestedFor(urlPathEqualTo("/rabbitmq/rabbitmq-erlang/large.tar.gz"))
+            .withQueryParam("part_number", equalTo("3")));
+    verify(1, postRequestedFor(urlEqualTo("/v1/files/rabbitmq/rabbitmq-erlang/up-1/complete/")));
+  }
+
+  @Test
+  void findStatusShouldReturnSynchronizationStatus() throws Exception {
+    stubFor(
+        get(urlEqualTo("/v1/packages/rabbitmq/rabbitmq-erlang/abc/status/"))
+            .willReturn(
+                aResponse()
+                    .withBody(
+                        "{\"is_sync_completed\": false, \"is_sync_failed\": true, "
+                            + "\"status_reason\": \"invalid package\"}")));
+    CloudsmithPackageAccess access = access(simpleInput());
+
+    Package.Status status =
+        access.findStatus(baseUrl() + "/v1/packages/rabbitmq/rabbitmq-erlang/abc/status/");
+    assertThat(status.isSyncCompleted()).isFalse();
+    assertThat(status.isSyncFailed()).isTrue();
+    assertThat(status.statusReason()).isEqualTo("invalid package");
+  }
+
+  static Input simpleInput() {
+    return simpleInput("{ }");
+  }
+
+  static Input simpleInput(String params) {
+    String in =
+        "{\n"
+            + "  \"source\": {\n"
+            + "    \"username\": \"team-rabbitmq\",\n"
+            + "    \"organization\": \"rabbitmq\",\n"
+            + "    \"repository\": \"rabbitmq-erlang\",\n"
+            + "    \"api_key\": \"the api key\"\n"
+            + "  },\n"
+            + "  \"params\": "
+            + params
+            + "\n"
+            + "}";
+    return Utils.GSON.fromJson(in, Input.class);
+  }
+
   CloudsmithPackageAccess access(Input input) {
     return new CloudsmithPackageAccess(
         input, baseUrl(), baseUrl(), baseUrl(), new Log.GitHubActionsLog());
@@ -0,0 +1,46 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class PackageIndexTest {
+
+  static Package p(String filename, String version, String uploadedAt) {
+    Package p = CloudsmithConcourseResourceTest.p(filename);
+    p.setVersion(version);
+    if (uploadedAt != null) {
+      p.setUploaded_at(ZonedDateTime.parse(uploadedAt));
+    }
+    return p;
+  }
+
+  @Test
+  void indexShouldSupportLookups() {
+    List<Package> packages =
+        List.of(
+            p("erlang_25.deb", "1:25", "2021-04-01T12:58:11.418817Z"),
+            p("erlang_26.deb", "1:26", "2021-04-03T08:30:00.5Z"),
+            p("erlang-nox_25.deb", "1:25", "2021-04-02T10:00:00Z"),
+            p("erlang_25.deb", "1:25", null),
+            p("rabbitmq-server.tar.xz", "3.13.0", null));
+    PackageIndex index = new PackageIndex(packages);
+
+    assertThat(index.packages()).containsExactlyElementsOf(packages);
+    assertThat(index.versions()).containsExactly("1:25", "1:26", "3.13.0");
+    assertThat(index.byVersion("1:25"))
+        .extracting(Package::filename)
+        .containsExactly("erlang_25.deb", "erlang-nox_25.deb", "erlang_25.deb");
+    assertThat(index.byVersion("1:27")).isEmpty();
+    assertThat(index.latestUploadDate("1:25"))
+        .isEqualTo(ZonedDateTime.parse("2021-04-02T10:00:00Z"));
+    assertThat(index.latestUploadDate("3.13.0")).isNull();
+  }
+}
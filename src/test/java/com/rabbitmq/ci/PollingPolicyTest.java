@@ -0,0 +1,55 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+public class PollingPolicyTest {
+
+  @RepeatedTest(10)
+  void delayShouldGrowExponentiallyWithJitterUpToMaxInterval() {
+    PollingPolicy policy =
+        new PollingPolicy(Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofMinutes(5));
+    assertThat(policy.delay(1).toMillis()).isBetween(800L, 1200L);
+    assertThat(policy.delay(2).toMillis()).isBetween(1600L, 2400L);
+    assertThat(policy.delay(3).toMillis()).isBetween(3200L, 4800L);
+    assertThat(policy.delay(5).toMillis()).isBetween(8000L, 12000L);
+    assertThat(policy.delay(100).toMillis()).isBetween(8000L, 12000L);
+  }
+
+  @Test
+  void fromShouldUseParameters() {
+    Input.Params params =
+        Utils.GSON.fromJson(
+            "{\"sync_timeout\": 600, \"sync_polling_initial_interval\": 2, "
+                + "\"sync_polling_max_interval\": 30}",
+            Input.Params.class);
+    PollingPolicy policy = PollingPolicy.from(params);
+    assertThat(policy.timeout()).isEqualTo(Duration.ofMinutes(10));
+    assertThat(policy.delay(1).toMillis()).isBetween(1600L, 2400L);
+    assertThat(policy.delay(20).toMillis()).isBetween(24000L, 36000L);
+  }
+
+  @Test
+  void fromShouldRejectInvalidParameters() {
+    for (String json :
+        new String[] {
+          "{\"sync_timeout\": 0}",
+          "{\"sync_polling_initial_interval\": 0}",
+          "{\"sync_polling_initial_interval\": -1}",
+          "{\"sync_polling_initial_interval\": 20, \"sync_polling_max_interval\": 10}"
+        }) {
+      Input.Params params = Utils.GSON.fromJson(json, Input.Params.class);
+      assertThatThrownBy(() -> PollingPolicy.from(params))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+  }
+}
@@ -52,4 +52,16 @@ public class RetryUtilsTest {
     Assertions.assertThatThrownBy(() -> retry(task)).isInstanceOf(RetryException.class);
     verify(task, times(3)).call();
   }
+
+  @Test
+  void shouldNotRetryWhenExceptionIsNotRetriable() throws Exception {
+    when(task.call()).thenThrow(new IllegalArgumentException());
+    Assertions.assertThatThrownBy(
+            () ->
+                RetryUtils.retry(
+                    task, Duration.ofMillis(10), e -> !(e instanceof IllegalArgumentException)))
+        .isInstanceOf(RetryException.class)
+        .hasCauseInstanceOf(IllegalArgumentException.class);
+    verify(task, times(1)).call();
+  }
 }
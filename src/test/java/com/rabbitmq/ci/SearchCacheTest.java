@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SearchCacheTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void entriesNotUsedForTooLongShouldBeEvicted() throws Exception {
+    SearchCache cache = new SearchCache(directory);
+    cache.put(new SearchCache.Entry("https://example.com/old", "\"1\"", null, null, -1, "[]"));
+    cache.put(new SearchCache.Entry("https://example.com/used", "\"2\"", null, null, -1, "[]"));
+    FileTime old =
+        FileTime.from(Instant.now().minus(SearchCache.MAX_UNUSED_AGE).minus(Duration.ofHours(1)));
+    List<Path> files;
+    try (Stream<Path> list = Files.list(directory)) {
+      files = list.collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      Files.setLastModifiedTime(file, old);
+    }
+    cache.put(new SearchCache.Entry("https://example.com/new", "\"3\"", null, null, -1, "[]"));
+    // reading an entry counts as a use
+    assertThat(cache.get("https://example.com/used")).isNotNull();
+
+    cache = new SearchCache(directory);
+    assertThat(cache.get("https://example.com/old")).isNull();
+    assertThat(cache.get("https://example.com/used")).isNotNull();
+    assertThat(cache.get("https://example.com/new")).isNotNull();
+  }
+}